@@ -0,0 +1,253 @@
+import com.hazelcast.cluster.Member;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.MapStore;
+import com.hazelcast.partition.MigrationListener;
+import com.hazelcast.partition.MigrationState;
+import com.hazelcast.partition.Partition;
+import com.hazelcast.partition.PartitionService;
+import com.hazelcast.partition.ReplicaMigrationEvent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free Bloom filter over key hash codes; sized from the expected number of keys and false-positive rate.
+final class BloomFilter<E> {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(expectedInsertions, 1);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = Math.max(64, m);
+        this.bits = new AtomicLongArray((int) ((bitCount + 63) >>> 6));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    void add(E element) {
+        long hash = mix(element.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = Math.floorMod(h1 + (long) i * h2, bitCount);
+            long mask = 1L << index;
+            int word = (int) (index >>> 6);
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    boolean mightContain(E element) {
+        long hash = mix(element.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // murmur3 fmix64
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53e1a85L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
+
+/**
+ * Keeps lookups of IDs that do not exist away from the database. A Bloom filter of existing IDs is filled while
+ * Hazelcast iterates loadAllKeys and by every store. IDs the filter lets through but the database does not have
+ * are remembered for {@code negativeTtlMillis}.
+ *
+ * <p>Hazelcast iterates loadAllKeys on one member only, and stores run on the partition owner, so a member's
+ * filter is only complete for the partitions it owned when its iteration finished and has kept since. The filter
+ * rejects keys of those partitions only; any migration of a partition's primary removes it for good. Members
+ * that did not iterate loadAllKeys reject nothing through the filter and rely on the negative cache.
+ *
+ * <p>Rows inserted into the database by other systems must be reported through {@link #markPresent(Object)}
+ * (e.g. from the ChangeDataCaptureIngestor's afterApply hook) on every member, otherwise the filter keeps
+ * rejecting them.
+ */
+class AbsentKeyGuardMapStore<ID, T> implements MapStore<ID, T> {
+
+    private final MapStore<ID, T> delegate;
+    private final BloomFilter<ID> existingKeys;
+    private final LocalCache<ID, Long> absentUntil;
+    private final long negativeTtlMillis;
+    private final PartitionService partitionService;
+    // Partitions whose existing keys are all in the filter
+    private final Set<Integer> coveredPartitions = ConcurrentHashMap.newKeySet();
+    // Partitions whose primary moved since this store was created; never covered again
+    private final Set<Integer> migratedPartitions = ConcurrentHashMap.newKeySet();
+
+    AbsentKeyGuardMapStore(MapStore<ID, T> delegate, HazelcastInstance hazelcastInstance, long expectedKeys,
+                           double falsePositiveRate, int negativeCacheSize, long negativeTtl, TimeUnit unit) {
+        this.delegate = delegate;
+        this.existingKeys = new BloomFilter<>(expectedKeys, falsePositiveRate);
+        this.absentUntil = LocalCache.create(CacheEvictionMode.LRU, negativeCacheSize);
+        this.negativeTtlMillis = unit.toMillis(negativeTtl);
+        this.partitionService = hazelcastInstance.getPartitionService();
+        partitionService.addMigrationListener(new CoverageListener());
+    }
+
+    void markPresent(ID key) {
+        existingKeys.add(key);
+        absentUntil.remove(key);
+    }
+
+    @Override
+    public T load(ID key) {
+        if (knownAbsent(key)) {
+            return null;
+        }
+        T value = delegate.load(key);
+        if (value == null) {
+            absentUntil.put(key, System.currentTimeMillis() + negativeTtlMillis);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<ID, T> loadAll(Collection<ID> keys) {
+        List<ID> candidates = new ArrayList<>(keys.size());
+        for (ID key : keys) {
+            if (!knownAbsent(key)) {
+                candidates.add(key);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return new HashMap<>();
+        }
+        Map<ID, T> loaded = delegate.loadAll(candidates);
+        long expiry = System.currentTimeMillis() + negativeTtlMillis;
+        for (ID key : candidates) {
+            if (!loaded.containsKey(key)) {
+                absentUntil.put(key, expiry);
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public Iterable<ID> loadAllKeys() {
+        Iterable<ID> keys = delegate.loadAllKeys();
+        if (keys == null) {
+            return null;
+        }
+        return () -> new Iterator<ID>() {
+            private final Iterator<ID> iterator = keys.iterator();
+
+            @Override
+            public boolean hasNext() {
+                boolean hasNext = iterator.hasNext();
+                if (!hasNext) {
+                    coverOwnedPartitions();
+                }
+                return hasNext;
+            }
+
+            @Override
+            public ID next() {
+                ID key = iterator.next();
+                existingKeys.add(key);
+                return key;
+            }
+        };
+    }
+
+    @Override
+    public void store(ID key, T value) {
+        markPresent(key);
+        delegate.store(key, value);
+    }
+
+    @Override
+    public void storeAll(Map<ID, T> map) {
+        map.keySet().forEach(this::markPresent);
+        delegate.storeAll(map);
+    }
+
+    @Override
+    public void delete(ID key) {
+        // Bloom filters cannot forget; a deleted key just costs one database miss, then hits the negative cache
+        delegate.delete(key);
+    }
+
+    @Override
+    public void deleteAll(Collection<ID> keys) {
+        delegate.deleteAll(keys);
+    }
+
+    private void coverOwnedPartitions() {
+        for (Partition partition : partitionService.getPartitions()) {
+            Member owner = partition.getOwner();
+            if (owner != null && owner.localMember() && !migratedPartitions.contains(partition.getPartitionId())) {
+                coveredPartitions.add(partition.getPartitionId());
+            }
+        }
+        // A migration may have completed while the partitions were being collected
+        coveredPartitions.removeAll(migratedPartitions);
+    }
+
+    private boolean knownAbsent(ID key) {
+        if (!coveredPartitions.isEmpty()
+                && coveredPartitions.contains(partitionService.getPartition(key).getPartitionId())
+                && !existingKeys.mightContain(key)) {
+            return true;
+        }
+        Long until = absentUntil.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            absentUntil.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    // Stores for a migrated partition ran on another member, so its keys may be missing from this filter
+    private final class CoverageListener implements MigrationListener {
+
+        @Override
+        public void migrationStarted(MigrationState state) {
+        }
+
+        @Override
+        public void migrationFinished(MigrationState state) {
+        }
+
+        @Override
+        public void replicaMigrationCompleted(ReplicaMigrationEvent event) {
+            if (event.getReplicaIndex() == 0) {
+                migratedPartitions.add(event.getPartitionId());
+                coveredPartitions.remove(event.getPartitionId());
+            }
+        }
+
+        @Override
+        public void replicaMigrationFailed(ReplicaMigrationEvent event) {
+        }
+    }
+}
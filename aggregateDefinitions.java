@@ -0,0 +1,265 @@
+import com.hazelcast.core.HazelcastInstance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// How many child entries one parent joins to.
+enum Cardinality {
+    ONE,
+    MANY
+}
+
+/**
+ * One map in an aggregate shape: the component name it is exposed under, the IMap it is read from, how the
+ * child keys are derived from the parent entry ({@code (parentKey, parentValue) -> keys}) and its own children.
+ */
+final class AggregateNode {
+
+    private final String name;
+    private final String mapName;
+    private final Cardinality cardinality;
+    private final BiFunction<Object, Object, Collection<?>> joinKeys;
+    private final List<AggregateNode> children = new ArrayList<>();
+
+    private AggregateNode(String name, String mapName, Cardinality cardinality,
+                          BiFunction<Object, Object, Collection<?>> joinKeys) {
+        this.name = name;
+        this.mapName = mapName;
+        this.cardinality = cardinality;
+        this.joinKeys = joinKeys;
+    }
+
+    static AggregateNode root(String mapName) {
+        return new AggregateNode(mapName, mapName, Cardinality.ONE, (key, value) -> List.of());
+    }
+
+    // Child map keyed by the same ID as its parent, e.g. addresses and skills by personId
+    static AggregateNode sharedKey(String name, String mapName) {
+        return new AggregateNode(name, mapName, Cardinality.ONE, (key, value) -> List.of(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    static <P> AggregateNode one(String name, String mapName, Function<P, ?> foreignKey) {
+        return new AggregateNode(name, mapName, Cardinality.ONE, (key, value) -> {
+            Object childKey = foreignKey.apply((P) value);
+            return childKey == null ? List.of() : List.of(childKey);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    static <P> AggregateNode many(String name, String mapName, Function<P, Collection<?>> foreignKeys) {
+        return new AggregateNode(name, mapName, Cardinality.MANY, (key, value) -> foreignKeys.apply((P) value));
+    }
+
+    AggregateNode join(AggregateNode child) {
+        children.add(child);
+        return this;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getMapName() {
+        return mapName;
+    }
+
+    Cardinality getCardinality() {
+        return cardinality;
+    }
+
+    List<AggregateNode> getChildren() {
+        return children;
+    }
+
+    Collection<?> joinKeys(Object parentKey, Object parentValue) {
+        return joinKeys.apply(parentKey, parentValue);
+    }
+}
+
+/**
+ * An aggregate shape plus the function that builds the aggregate from a resolved {@link AggregateInstance} tree.
+ * Build definitions once, e.g. as constants; the resolver never modifies them.
+ */
+final class AggregateDefinition<A> {
+
+    private final AggregateNode root;
+    private final Function<AggregateInstance, A> assembler;
+
+    AggregateDefinition(AggregateNode root, Function<AggregateInstance, A> assembler) {
+        this.root = root;
+        this.assembler = assembler;
+    }
+
+    AggregateNode getRoot() {
+        return root;
+    }
+
+    A assemble(AggregateInstance instance) {
+        return assembler.apply(instance);
+    }
+}
+
+// One resolved entry and its resolved children by component name; what an assembler reads from.
+final class AggregateInstance {
+
+    private final AggregateNode node;
+    private final Object key;
+    private final Object value;
+    private final Map<String, List<AggregateInstance>> children = new HashMap<>();
+
+    AggregateInstance(AggregateNode node, Object key, Object value) {
+        this.node = node;
+        this.key = key;
+        this.value = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    <K> K key() {
+        return (K) key;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T value() {
+        return (T) value;
+    }
+
+    // Value of a Cardinality.ONE component, or null if it has no entry
+    <T> T one(String component) {
+        List<AggregateInstance> instances = children.getOrDefault(component, List.of());
+        return instances.isEmpty() ? null : instances.get(0).value();
+    }
+
+    // Values of a Cardinality.MANY component in join-key order
+    <T> List<T> many(String component) {
+        List<T> values = new ArrayList<>();
+        for (AggregateInstance instance : children.getOrDefault(component, List.of())) {
+            values.add(instance.value());
+        }
+        return values;
+    }
+
+    // Resolved entries of a component, for reading their own children
+    List<AggregateInstance> instances(String component) {
+        return Collections.unmodifiableList(children.getOrDefault(component, List.of()));
+    }
+
+    AggregateNode node() {
+        return node;
+    }
+
+    void addChild(AggregateInstance child) {
+        children.computeIfAbsent(child.node.getName(), name -> new ArrayList<>()).add(child);
+    }
+}
+
+/**
+ * Resolves a batch of root IDs breadth-first: each level's join keys are collected over all parents and read
+ * with one getAll per map, so an aggregate shape costs one round-trip per (level, map) however many roots and
+ * children there are. Maps are read-through, so misses come from the MapStore's loadAll in the same call.
+ *
+ * <p>Every key read counts as an access for TinyLFU eviction, and maps with a {@link HotKeyReplicatedMap} are
+ * read through it, so batch reads feed the same hot-key and frequency statistics as single reads do.
+ */
+class AggregateResolver {
+
+    private final HazelcastInstance hazelcastInstance;
+    private final Map<String, HotKeyReplicatedMap<?, ?>> hotKeyMaps;
+
+    AggregateResolver(HazelcastInstance hazelcastInstance) {
+        this(hazelcastInstance, Map.of());
+    }
+
+    // hotKeyMaps by the name of the IMap they front
+    AggregateResolver(HazelcastInstance hazelcastInstance, Map<String, HotKeyReplicatedMap<?, ?>> hotKeyMaps) {
+        this.hazelcastInstance = hazelcastInstance;
+        this.hotKeyMaps = hotKeyMaps;
+    }
+
+    <K, A> Map<K, A> resolve(AggregateDefinition<A> definition, Collection<K> rootIds) {
+        AggregateNode root = definition.getRoot();
+        Map<Object, Object> rootValues = getAll(root.getMapName(), new LinkedHashSet<Object>(rootIds));
+        Map<K, AggregateInstance> roots = new LinkedHashMap<>();
+        List<AggregateInstance> level = new ArrayList<>();
+        for (K id : rootIds) {
+            Object value = rootValues.get(id);
+            if (value != null && !roots.containsKey(id)) {
+                AggregateInstance instance = new AggregateInstance(root, id, value);
+                roots.put(id, instance);
+                level.add(instance);
+            }
+        }
+        while (!level.isEmpty()) {
+            level = resolveChildren(level);
+        }
+        Map<K, A> aggregates = new LinkedHashMap<>();
+        roots.forEach((id, instance) -> aggregates.put(id, definition.assemble(instance)));
+        return aggregates;
+    }
+
+    private List<AggregateInstance> resolveChildren(List<AggregateInstance> parents) {
+        List<ChildRequest> requests = new ArrayList<>();
+        Map<String, Set<Object>> keysByMap = new LinkedHashMap<>();
+        for (AggregateInstance parent : parents) {
+            for (AggregateNode child : parent.node().getChildren()) {
+                Collection<?> keys = child.joinKeys(parent.key(), parent.value());
+                if (keys != null && !keys.isEmpty()) {
+                    requests.add(new ChildRequest(parent, child, keys));
+                    keysByMap.computeIfAbsent(child.getMapName(), name -> new HashSet<>()).addAll(keys);
+                }
+            }
+        }
+        Map<String, Map<Object, Object>> valuesByMap = new HashMap<>();
+        keysByMap.forEach((mapName, keys) -> valuesByMap.put(mapName, getAll(mapName, keys)));
+
+        List<AggregateInstance> next = new ArrayList<>();
+        for (ChildRequest request : requests) {
+            Map<Object, Object> values = valuesByMap.get(request.node.getMapName());
+            for (Object key : request.keys) {
+                Object value = values.get(key);
+                if (value != null) {
+                    AggregateInstance child = new AggregateInstance(request.node, key, value);
+                    request.parent.addChild(child);
+                    next.add(child);
+                    if (request.node.getCardinality() == Cardinality.ONE) {
+                        break;
+                    }
+                }
+            }
+        }
+        return next;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object, Object> getAll(String mapName, Set<Object> keys) {
+        keys.forEach(key -> TinyLfuEvictionComparator.recordAccess(mapName, key));
+        HotKeyReplicatedMap<Object, Object> hotKeyMap = (HotKeyReplicatedMap<Object, Object>) hotKeyMaps.get(mapName);
+        if (hotKeyMap != null) {
+            return hotKeyMap.getAll(keys);
+        }
+        return hazelcastInstance.<Object, Object>getMap(mapName).getAll(keys);
+    }
+
+    private static final class ChildRequest {
+
+        private final AggregateInstance parent;
+        private final AggregateNode node;
+        private final Collection<?> keys;
+
+        private ChildRequest(AggregateInstance parent, AggregateNode node, Collection<?> keys) {
+            this.parent = parent;
+            this.node = node;
+            this.keys = keys;
+        }
+    }
+}
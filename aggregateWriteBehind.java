@@ -0,0 +1,265 @@
+import com.hazelcast.map.MapStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Grouped write-behind for maps that make up one aggregate (persons, addresses, skills). Each map's write-behind
+ * hands its changes to the coordinator instead of the database; the coordinator collects them per aggregate ID
+ * and periodically writes a batch of aggregates in a single transaction: stores in registration order (parents
+ * first), then deletes in reverse registration order (children first), so foreign keys hold at every statement.
+ *
+ * <p>Hazelcast treats an entry as stored once it is handed over, so a member crash loses whatever the coordinator
+ * has not flushed yet. Keep the flush interval at or below the maps' own write delay. Until a change is written,
+ * loads of its key are answered from the coordinator, so an evicted entry never reloads an older database row.
+ */
+class AggregateWriteCoordinator implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AggregateWriteCoordinator.class);
+    static final Object DELETED = new Object();
+
+    private final Map<String, Participant> participants = new LinkedHashMap<>();
+    private final ConcurrentMap<Object, Map<String, Map<Object, Object>>> pending = new ConcurrentHashMap<>();
+    // The batch being written; still served to loads until it is committed
+    private volatile Map<Object, Map<String, Map<Object, Object>>> flushing = Map.of();
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAggregatesPerFlush;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "aggregate-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    AggregateWriteCoordinator(TransactionTemplate transactionTemplate, long flushIntervalMillis,
+                              int maxAggregatesPerFlush) {
+        this.transactionTemplate = transactionTemplate;
+        this.maxAggregatesPerFlush = maxAggregatesPerFlush;
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Register participants before the maps start, parents first: stores run in this order, deletes in reverse
+    @SuppressWarnings("unchecked")
+    synchronized <ID, T> MapStore<ID, T> register(String mapName, MapStore<ID, T> store,
+                                                  Function<ID, Object> aggregateIdOf) {
+        participants.put(mapName, new Participant((MapStore<Object, Object>) store,
+                (Function<Object, Object>) aggregateIdOf));
+        return new GroupedWriteBehindMapStore<>(mapName, store, this);
+    }
+
+    void enqueue(String mapName, Object key, Object valueOrDeleted) {
+        Object aggregateId = participants.get(mapName).aggregateIdOf.apply(key);
+        pending.compute(aggregateId, (id, changes) -> {
+            Map<String, Map<Object, Object>> merged = changes == null ? new HashMap<>() : changes;
+            merged.computeIfAbsent(mapName, name -> new LinkedHashMap<>()).put(key, valueOrDeleted);
+            return merged;
+        });
+    }
+
+    void enqueueDelete(String mapName, Object key) {
+        enqueue(mapName, key, DELETED);
+    }
+
+    int pendingAggregates() {
+        return pending.size();
+    }
+
+    // Latest unwritten change of a key: its value, DELETED, or null when the database is up to date
+    Object unwritten(String mapName, Object key) {
+        Object aggregateId = participants.get(mapName).aggregateIdOf.apply(key);
+        Object[] change = new Object[1];
+        // Read under the bin lock: the change maps are only mutated inside compute
+        pending.computeIfPresent(aggregateId, (id, changes) -> {
+            change[0] = changes.getOrDefault(mapName, Map.of()).get(key);
+            return changes;
+        });
+        if (change[0] == null) {
+            change[0] = flushing.getOrDefault(aggregateId, Map.of()).getOrDefault(mapName, Map.of()).get(key);
+        }
+        return change[0];
+    }
+
+    synchronized void flush() {
+        Map<Object, Map<String, Map<Object, Object>>> batch = drain();
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(batch));
+        } catch (RuntimeException e) {
+            requeue(batch);
+            throw e;
+        } finally {
+            flushing = Map.of();
+        }
+    }
+
+    // Writes everything pending, one flush of at most maxAggregatesPerFlush after another
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        while (!pending.isEmpty()) {
+            flush();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Grouped write-behind flush failed, {} aggregate(s) will be retried", pending.size(), e);
+        }
+    }
+
+    private Map<Object, Map<String, Map<Object, Object>>> drain() {
+        Map<Object, Map<String, Map<Object, Object>>> batch = new ConcurrentHashMap<>();
+        flushing = batch;
+        Iterator<Object> aggregateIds = pending.keySet().iterator();
+        while (aggregateIds.hasNext() && batch.size() < maxAggregatesPerFlush) {
+            // Moved atomically, so unwritten() finds a change in either pending or flushing
+            pending.computeIfPresent(aggregateIds.next(), (aggregateId, changes) -> {
+                batch.put(aggregateId, changes);
+                return null;
+            });
+        }
+        return batch;
+    }
+
+    private void write(Map<Object, Map<String, Map<Object, Object>>> batch) {
+        List<Runnable> deletesInReverse = new ArrayList<>();
+        participants.forEach((mapName, participant) -> {
+            Map<Object, Object> stores = new LinkedHashMap<>();
+            List<Object> deletes = new ArrayList<>();
+            for (Map<String, Map<Object, Object>> changes : batch.values()) {
+                changes.getOrDefault(mapName, Map.of()).forEach((key, value) -> {
+                    if (value == DELETED) {
+                        deletes.add(key);
+                    } else {
+                        stores.put(key, value);
+                    }
+                });
+            }
+            if (!stores.isEmpty()) {
+                participant.store.storeAll(stores);
+            }
+            if (!deletes.isEmpty()) {
+                deletesInReverse.add(0, () -> participant.store.deleteAll(deletes));
+            }
+        });
+        deletesInReverse.forEach(Runnable::run);
+    }
+
+    // Changes enqueued while the failed flush was running are newer and win over the requeued ones
+    private void requeue(Map<Object, Map<String, Map<Object, Object>>> batch) {
+        batch.forEach((aggregateId, failed) -> pending.merge(aggregateId, copyOf(failed), (newer, older) -> {
+            newer.forEach((mapName, changes) ->
+                    older.computeIfAbsent(mapName, name -> new LinkedHashMap<>()).putAll(changes));
+            return older;
+        }));
+    }
+
+    // The failed batch stays readable through flushing until requeue is done, so it is not modified in place
+    private static Map<String, Map<Object, Object>> copyOf(Map<String, Map<Object, Object>> changes) {
+        Map<String, Map<Object, Object>> copy = new HashMap<>();
+        changes.forEach((mapName, byKey) -> copy.put(mapName, new LinkedHashMap<>(byKey)));
+        return copy;
+    }
+
+    private static final class Participant {
+
+        private final MapStore<Object, Object> store;
+        private final Function<Object, Object> aggregateIdOf;
+
+        private Participant(MapStore<Object, Object> store, Function<Object, Object> aggregateIdOf) {
+            this.store = store;
+            this.aggregateIdOf = aggregateIdOf;
+        }
+    }
+}
+
+// MapStore handed to Hazelcast for a participating map: writes go to the coordinator, reads see them first.
+class GroupedWriteBehindMapStore<ID, T> implements MapStore<ID, T> {
+
+    private final String mapName;
+    private final MapStore<ID, T> delegate;
+    private final AggregateWriteCoordinator coordinator;
+
+    GroupedWriteBehindMapStore(String mapName, MapStore<ID, T> delegate, AggregateWriteCoordinator coordinator) {
+        this.mapName = mapName;
+        this.delegate = delegate;
+        this.coordinator = coordinator;
+    }
+
+    @Override
+    public void store(ID key, T value) {
+        coordinator.enqueue(mapName, key, value);
+    }
+
+    @Override
+    public void storeAll(Map<ID, T> map) {
+        map.forEach((key, value) -> coordinator.enqueue(mapName, key, value));
+    }
+
+    @Override
+    public void delete(ID key) {
+        coordinator.enqueueDelete(mapName, key);
+    }
+
+    @Override
+    public void deleteAll(Collection<ID> keys) {
+        keys.forEach(key -> coordinator.enqueueDelete(mapName, key));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T load(ID key) {
+        Object unwritten = coordinator.unwritten(mapName, key);
+        if (unwritten == null) {
+            return delegate.load(key);
+        }
+        return unwritten == AggregateWriteCoordinator.DELETED ? null : (T) unwritten;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<ID, T> loadAll(Collection<ID> keys) {
+        List<ID> missing = new ArrayList<>(keys.size());
+        Map<ID, T> loaded = new HashMap<>();
+        for (ID key : keys) {
+            Object unwritten = coordinator.unwritten(mapName, key);
+            if (unwritten == null) {
+                missing.add(key);
+            } else if (unwritten != AggregateWriteCoordinator.DELETED) {
+                loaded.put(key, (T) unwritten);
+            }
+        }
+        if (!missing.isEmpty()) {
+            loaded.putAll(delegate.loadAll(missing));
+        }
+        return loaded;
+    }
+
+    @Override
+    public Iterable<ID> loadAllKeys() {
+        return delegate.loadAllKeys();
+    }
+}
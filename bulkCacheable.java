@@ -0,0 +1,140 @@
+import com.hazelcast.config.MapStoreConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-key counterpart of @Cacheable for methods shaped {@code Map<ID, T> method(Collection<ID> ids, ...)}; the
+ * IDs are the one parameter declared as a Collection, and the misses are passed in the same kind of collection
+ * (Set or List). The IDs are looked up with one IMap.getAll on the map named {@link #value()}; the method is only
+ * invoked for the misses, and what it returns is written back with one putAll.
+ *
+ * <p>Meant for caches without a MapStore. On a MapStore-backed map getAll already reads the misses through from
+ * the database, so what it does not return does not exist: the method is not invoked and nothing is written back,
+ * which would otherwise go to MapStore.storeAll; read such maps with getAll directly. Clients cannot see the
+ * members' map config, so there the method is invoked for misses and the result written back with putTransient,
+ * which never reaches a MapStore.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@interface BulkCacheable {
+
+    // Cache (IMap) name, as in @Cacheable
+    String value();
+}
+
+@Aspect
+@Component
+class BulkCacheableAspect {
+
+    private final HazelcastInstance hazelcastInstance;
+    private final ConcurrentMap<String, StoreMode> storeModes = new ConcurrentHashMap<>();
+
+    BulkCacheableAspect(HazelcastInstance hazelcastInstance) {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+
+    @Around("@annotation(bulkCacheable)")
+    @SuppressWarnings("unchecked")
+    public Object around(ProceedingJoinPoint joinPoint, BulkCacheable bulkCacheable) throws Throwable {
+        Object[] args = joinPoint.getArgs();
+        Class<?>[] parameterTypes = ((MethodSignature) joinPoint.getSignature()).getParameterTypes();
+        int idsIndex = indexOfIds(joinPoint, parameterTypes);
+        if (args[idsIndex] == null || ((Collection<Object>) args[idsIndex]).isEmpty()) {
+            return new HashMap<>();
+        }
+        Set<Object> ids = new LinkedHashSet<>((Collection<Object>) args[idsIndex]);
+
+        IMap<Object, Object> cache = hazelcastInstance.getMap(bulkCacheable.value());
+        Map<Object, Object> result = new HashMap<>(cache.getAll(ids));
+        StoreMode storeMode = storeMode(bulkCacheable.value());
+        if (storeMode == StoreMode.READ_THROUGH) {
+            return result;
+        }
+        Collection<Object> misses = Set.class.isAssignableFrom(parameterTypes[idsIndex])
+                ? new LinkedHashSet<>() : new ArrayList<>();
+        for (Object id : ids) {
+            if (!result.containsKey(id)) {
+                misses.add(id);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        Object[] missArgs = args.clone();
+        missArgs[idsIndex] = misses;
+        Map<Object, Object> loaded = (Map<Object, Object>) joinPoint.proceed(missArgs);
+        if (loaded != null && !loaded.isEmpty()) {
+            if (storeMode == StoreMode.NONE) {
+                cache.putAll(loaded);
+            } else {
+                // -1 keeps the map's configured time-to-live
+                loaded.forEach((key, value) -> cache.putTransient(key, value, -1, TimeUnit.SECONDS));
+            }
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    private StoreMode storeMode(String mapName) {
+        return storeModes.computeIfAbsent(mapName, name -> {
+            try {
+                // findMapConfig, unlike getMapConfig, does not register a config for an unknown name
+                MapStoreConfig mapStoreConfig = hazelcastInstance.getConfig().findMapConfig(name).getMapStoreConfig();
+                return mapStoreConfig != null && mapStoreConfig.isEnabled() ? StoreMode.READ_THROUGH : StoreMode.NONE;
+            } catch (UnsupportedOperationException e) {
+                return StoreMode.UNKNOWN;
+            }
+        });
+    }
+
+    // The single parameter declared as a Collection (or a Set or List)
+    private static int indexOfIds(ProceedingJoinPoint joinPoint, Class<?>[] parameterTypes) {
+        int index = -1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (Collection.class.isAssignableFrom(parameterTypes[i])) {
+                if (index >= 0) {
+                    throw new IllegalStateException("@BulkCacheable method " + joinPoint.getSignature()
+                            + " has more than one Collection parameter");
+                }
+                index = i;
+            }
+        }
+        if (index < 0) {
+            throw new IllegalStateException("@BulkCacheable method " + joinPoint.getSignature()
+                    + " needs a Collection parameter of IDs");
+        }
+        Class<?> type = parameterTypes[index];
+        if (!type.isAssignableFrom(LinkedHashSet.class) && !type.isAssignableFrom(ArrayList.class)) {
+            throw new IllegalStateException("@BulkCacheable method " + joinPoint.getSignature()
+                    + " must declare its IDs as Collection, Set or List, not " + type.getName());
+        }
+        return index;
+    }
+
+    // Whether the map has a MapStore; UNKNOWN on a client, which cannot see the members' config
+    private enum StoreMode {
+        NONE,
+        READ_THROUGH,
+        UNKNOWN
+    }
+}
@@ -0,0 +1,302 @@
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// One row change from the database change log, already mapped to the target map and entity.
+final class ChangeEvent {
+
+    enum Operation {
+        UPSERT,
+        DELETE
+    }
+
+    private final String mapName;
+    private final Object key;
+    private final Object value;
+    private final Operation operation;
+
+    ChangeEvent(String mapName, Object key, Object value, Operation operation) {
+        this.mapName = mapName;
+        this.key = key;
+        this.value = value;
+        this.operation = operation;
+    }
+
+    static ChangeEvent upsert(String mapName, Object key, Object value) {
+        return new ChangeEvent(mapName, key, value, Operation.UPSERT);
+    }
+
+    static ChangeEvent delete(String mapName, Object key) {
+        return new ChangeEvent(mapName, key, null, Operation.DELETE);
+    }
+
+    String getMapName() {
+        return mapName;
+    }
+
+    Object getKey() {
+        return key;
+    }
+
+    Object getValue() {
+        return value;
+    }
+
+    Operation getOperation() {
+        return operation;
+    }
+}
+
+interface ChangeLogSource extends AutoCloseable {
+
+    List<ChangeEvent> poll(Duration timeout);
+
+    // Called once the batch returned by the last poll has been applied to the maps
+    void commit();
+
+    // Called when the batch returned by the last poll could not be applied; the next poll returns it again
+    void rewind();
+
+    @Override
+    void close();
+}
+
+// In-process stand-in for the Kafka topic, used locally and in tests.
+class QueueChangeLogSource implements ChangeLogSource {
+
+    private final BlockingQueue<ChangeEvent> queue;
+    private final int maxBatchSize;
+    private List<ChangeEvent> lastBatch = Collections.emptyList();
+    private List<ChangeEvent> redelivery = Collections.emptyList();
+
+    QueueChangeLogSource(BlockingQueue<ChangeEvent> queue, int maxBatchSize) {
+        this.queue = queue;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public List<ChangeEvent> poll(Duration timeout) {
+        if (!redelivery.isEmpty()) {
+            lastBatch = redelivery;
+            redelivery = Collections.emptyList();
+            return lastBatch;
+        }
+        List<ChangeEvent> batch = new ArrayList<>();
+        try {
+            ChangeEvent first = queue.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return Collections.emptyList();
+            }
+            batch.add(first);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        }
+        queue.drainTo(batch, maxBatchSize - 1);
+        lastBatch = batch;
+        return batch;
+    }
+
+    @Override
+    public void commit() {
+        // Events are removed from the queue when polled
+        lastBatch = Collections.emptyList();
+    }
+
+    @Override
+    public void rewind() {
+        redelivery = lastBatch;
+    }
+
+    @Override
+    public void close() {
+    }
+}
+
+/**
+ * Reads a CDC topic (e.g. Debezium) with manual offset commits. The record format is specific to the
+ * connector, so the caller supplies the mapping from record to ChangeEvent; returning null skips a record.
+ * Mapping does not depend on anything but the record, so a record the mapper throws on would fail every retry:
+ * it is handed to {@code deadLetter} (e.g. a producer to a dead-letter topic) and skipped. If deadLetter throws,
+ * the poll fails and the batch is read again.
+ */
+class KafkaChangeLogSource implements ChangeLogSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaChangeLogSource.class);
+
+    private final KafkaConsumer<String, String> consumer;
+    private final Function<ConsumerRecord<String, String>, ChangeEvent> recordMapper;
+    private final BiConsumer<ConsumerRecord<String, String>, RuntimeException> deadLetter;
+    // First offset per partition of the last poll, where rewind() seeks back to
+    private final Map<TopicPartition, Long> batchStart = new LinkedHashMap<>();
+
+    KafkaChangeLogSource(Properties consumerProperties, List<String> topics,
+                         Function<ConsumerRecord<String, String>, ChangeEvent> recordMapper,
+                         BiConsumer<ConsumerRecord<String, String>, RuntimeException> deadLetter) {
+        Properties properties = new Properties();
+        properties.putAll(consumerProperties);
+        properties.put("enable.auto.commit", "false");
+        properties.putIfAbsent("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+        properties.putIfAbsent("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+        this.consumer = new KafkaConsumer<>(properties);
+        this.consumer.subscribe(topics);
+        this.recordMapper = recordMapper;
+        this.deadLetter = deadLetter;
+    }
+
+    @Override
+    public List<ChangeEvent> poll(Duration timeout) {
+        ConsumerRecords<String, String> records = consumer.poll(timeout);
+        List<ChangeEvent> batch = new ArrayList<>(records.count());
+        // Every partition's start first: a failure below must still rewind all of them
+        batchStart.clear();
+        for (TopicPartition partition : records.partitions()) {
+            batchStart.put(partition, records.records(partition).get(0).offset());
+        }
+        for (ConsumerRecord<String, String> record : records) {
+            ChangeEvent event;
+            try {
+                event = recordMapper.apply(record);
+            } catch (RuntimeException e) {
+                LOGGER.error("Cannot map change record {}-{}@{}, sending it to the dead letter handler",
+                        record.topic(), record.partition(), record.offset(), e);
+                deadLetter.accept(record, e);
+                continue;
+            }
+            if (event != null) {
+                batch.add(event);
+            }
+        }
+        return batch;
+    }
+
+    @Override
+    public void commit() {
+        consumer.commitSync();
+        batchStart.clear();
+    }
+
+    @Override
+    public void rewind() {
+        batchStart.forEach(consumer::seek);
+    }
+
+    @Override
+    public void close() {
+        consumer.close();
+    }
+}
+
+/**
+ * Applies change-log batches to the entity maps. Within a batch only the last change per key is applied.
+ * Upserts go in with putTransient and deletes with evict, so neither calls MapStore.store or MapStore.delete:
+ * the database already has the change. {@code afterApply} is where dependent caches (e.g. the aggregate
+ * cache) are invalidated.
+ *
+ * <p>If a batch fails to apply or commit, the source is rewound and the batch retried with exponential backoff
+ * up to {@code maxBackoff}; the loop only ends on {@link #stop()} or interruption.
+ */
+class ChangeDataCaptureIngestor implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeDataCaptureIngestor.class);
+
+    private final HazelcastInstance hazelcastInstance;
+    private final ChangeLogSource source;
+    private final Consumer<ChangeEvent> afterApply;
+    private final Duration pollTimeout;
+    private final Duration maxBackoff;
+    private volatile boolean running = true;
+
+    ChangeDataCaptureIngestor(HazelcastInstance hazelcastInstance, ChangeLogSource source,
+                              Consumer<ChangeEvent> afterApply, Duration pollTimeout, Duration maxBackoff) {
+        this.hazelcastInstance = hazelcastInstance;
+        this.source = source;
+        this.afterApply = afterApply;
+        this.pollTimeout = pollTimeout;
+        this.maxBackoff = maxBackoff;
+    }
+
+    @Override
+    public void run() {
+        long backoffMillis = 0;
+        try {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    List<ChangeEvent> batch = source.poll(pollTimeout);
+                    if (!batch.isEmpty()) {
+                        apply(batch);
+                        source.commit();
+                    }
+                    backoffMillis = 0;
+                } catch (RuntimeException e) {
+                    // Nothing is committed: the batch is polled again and reapplied, which is idempotent
+                    backoffMillis = Math.min(maxBackoff.toMillis(), Math.max(100, backoffMillis * 2));
+                    LOGGER.warn("Applying change log batch failed, retrying in {} ms", backoffMillis, e);
+                    rewindQuietly();
+                    sleep(backoffMillis);
+                }
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    private void rewindQuietly() {
+        try {
+            source.rewind();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Rewinding the change log source failed", e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void apply(List<ChangeEvent> batch) {
+        Map<String, Map<Object, ChangeEvent>> latestByMap = new LinkedHashMap<>();
+        for (ChangeEvent event : batch) {
+            latestByMap.computeIfAbsent(event.getMapName(), name -> new LinkedHashMap<>())
+                    .put(event.getKey(), event);
+        }
+        latestByMap.forEach((mapName, events) -> {
+            IMap<Object, Object> map = hazelcastInstance.getMap(mapName);
+            for (ChangeEvent event : events.values()) {
+                if (event.getOperation() == ChangeEvent.Operation.DELETE) {
+                    map.evict(event.getKey());
+                } else {
+                    // TTL -1 keeps the map's configured TTL
+                    map.putTransient(event.getKey(), event.getValue(), -1, TimeUnit.SECONDS);
+                }
+                afterApply.accept(event);
+            }
+            LOGGER.debug("Applied {} change(s) to {}", events.size(), mapName);
+        });
+    }
+}
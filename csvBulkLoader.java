@@ -0,0 +1,243 @@
+import com.hazelcast.map.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Maps CSV columns to entity setters. The header is resolved to setter handles and converters once;
+ * each row then only parses values and invokes the handles. Unknown columns are ignored.
+ */
+final class CsvEntityMapper<T> {
+
+    @FunctionalInterface
+    private interface ColumnWriter<T> {
+        void write(T entity, String value) throws Throwable;
+    }
+
+    private final Supplier<T> factory;
+    private final List<String> header;
+    private final List<ColumnWriter<T>> writers;
+
+    private CsvEntityMapper(Supplier<T> factory, List<String> header, List<ColumnWriter<T>> writers) {
+        this.factory = factory;
+        this.header = header;
+        this.writers = writers;
+    }
+
+    static <T> CsvEntityMapper<T> compile(Class<T> entityType, Supplier<T> factory, List<String> header) {
+        Map<String, Method> setters = new HashMap<>();
+        for (Method method : entityType.getMethods()) {
+            if (method.getName().startsWith("set") && method.getParameterCount() == 1) {
+                setters.put(method.getName().substring(3).toLowerCase(), method);
+            }
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        List<ColumnWriter<T>> writers = new ArrayList<>(header.size());
+        for (String column : header) {
+            Method setter = setters.get(column.trim().replace("_", "").toLowerCase());
+            if (setter == null) {
+                writers.add((entity, value) -> { });
+                continue;
+            }
+            try {
+                MethodHandle handle = lookup.unreflect(setter);
+                Function<String, Object> converter = converterFor(setter.getParameterTypes()[0]);
+                writers.add((entity, value) -> {
+                    if (value != null && !value.isEmpty()) {
+                        handle.invoke(entity, converter.apply(value));
+                    }
+                });
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot access " + setter, e);
+            }
+        }
+        return new CsvEntityMapper<>(factory, List.copyOf(header), writers);
+    }
+
+    T map(List<String> row) {
+        T entity = factory.get();
+        for (int i = 0; i < writers.size() && i < row.size(); i++) {
+            try {
+                writers.get(i).write(entity, row.get(i));
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalArgumentException("Column " + (i + 1) + " (" + header.get(i).trim() + "): cannot map '"
+                        + row.get(i) + "'", e);
+            }
+        }
+        return entity;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Function<String, Object> converterFor(Class<?> type) {
+        if (type == String.class) {
+            return value -> value;
+        } else if (type == Long.class || type == long.class) {
+            return Long::valueOf;
+        } else if (type == Integer.class || type == int.class) {
+            return Integer::valueOf;
+        } else if (type == Double.class || type == double.class) {
+            return Double::valueOf;
+        } else if (type == Boolean.class || type == boolean.class) {
+            return Boolean::valueOf;
+        } else if (type == BigDecimal.class) {
+            return BigDecimal::new;
+        } else if (type == LocalDate.class) {
+            return LocalDate::parse;
+        } else if (type.isEnum()) {
+            return value -> Enum.valueOf((Class<? extends Enum>) type, value);
+        }
+        throw new IllegalArgumentException("No CSV converter for " + type);
+    }
+}
+
+/**
+ * Streams a CSV file into an IMap in fixed-size batches, so memory use does not grow with file size.
+ * With writeThrough the batches go through setAll and reach the MapStore; without it entries are put with
+ * putTransient, which is what you want when the database was bulk-loaded by other means.
+ */
+class CsvBulkLoader<K, T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CsvBulkLoader.class);
+
+    private final Class<T> entityType;
+    private final Supplier<T> factory;
+    private final Function<T, K> keyExtractor;
+    private final int batchSize;
+    private final boolean writeThrough;
+
+    CsvBulkLoader(Class<T> entityType, Supplier<T> factory, Function<T, K> keyExtractor,
+                  int batchSize, boolean writeThrough) {
+        this.entityType = entityType;
+        this.factory = factory;
+        this.keyExtractor = keyExtractor;
+        this.batchSize = batchSize;
+        this.writeThrough = writeThrough;
+    }
+
+    long load(Path csvFile, IMap<K, T> map) {
+        try (LineNumberReader reader = new LineNumberReader(Files.newBufferedReader(csvFile, StandardCharsets.UTF_8))) {
+            List<String> header = readRecord(reader);
+            if (header == null) {
+                return 0;
+            }
+            CsvEntityMapper<T> mapper = CsvEntityMapper.compile(entityType, factory, header);
+            Map<K, T> batch = new HashMap<>(batchSize * 2);
+            long count = 0;
+            List<String> row;
+            int line = reader.getLineNumber() + 1;
+            for (; (row = readRecord(reader)) != null; line = reader.getLineNumber() + 1) {
+                if (isBlank(row)) {
+                    continue;
+                }
+                T entity;
+                K key;
+                try {
+                    entity = mapper.map(row);
+                    key = keyExtractor.apply(entity);
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException(csvFile + " line " + line + ": " + e.getMessage(), e);
+                }
+                if (key == null) {
+                    throw new IllegalArgumentException(csvFile + " line " + line + ": no key");
+                }
+                batch.put(key, entity);
+                if (batch.size() == batchSize) {
+                    flush(batch, map);
+                }
+                count++;
+            }
+            flush(batch, map);
+            LOGGER.info("Loaded {} rows from {} into {}", count, csvFile, map.getName());
+            return count;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + csvFile, e);
+        }
+    }
+
+    // Empty lines, e.g. a trailing newline or separators between sections, carry no entity
+    private static boolean isBlank(List<String> row) {
+        for (String field : row) {
+            if (!field.isBlank()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void flush(Map<K, T> batch, IMap<K, T> map) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (writeThrough) {
+            map.setAll(batch);
+        } else {
+            // TTL -1 keeps the map's configured TTL
+            batch.forEach((key, value) -> map.putTransient(key, value, -1, TimeUnit.SECONDS));
+        }
+        batch.clear();
+    }
+
+    // RFC 4180 record: quoted fields may contain separators, doubled quotes and line breaks
+    static List<String> readRecord(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            if (!quoted) {
+                break;
+            }
+            line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Unterminated quoted field");
+            }
+            field.append('\n');
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
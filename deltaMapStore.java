@@ -0,0 +1,243 @@
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.MapLoaderLifecycleSupport;
+import com.hazelcast.map.MapStore;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+/**
+ * Base class for entities whose setters record which columns changed. Setters call {@code markDirty(i)}
+ * with the column index from the entity's {@link EntityTable}. The mask, and a count of changes that tells a
+ * written state from a later one, travel with the entity through Hazelcast serialization:
+ * IdentifiedDataSerializable entities call writeChangeState/readChangeState from writeData/readData.
+ */
+abstract class DirtyTrackingEntity implements Serializable {
+
+    private long changeMask;
+    private long changeCount;
+    private boolean persisted;
+
+    protected void markDirty(int column) {
+        changeMask |= 1L << column;
+        changeCount++;
+    }
+
+    long getChangeMask() {
+        return changeMask;
+    }
+
+    long getChangeCount() {
+        return changeCount;
+    }
+
+    boolean isPersisted() {
+        return persisted;
+    }
+
+    void markPersisted() {
+        changeMask = 0;
+        persisted = true;
+    }
+
+    protected void writeChangeState(ObjectDataOutput out) throws IOException {
+        out.writeLong(changeMask);
+        out.writeLong(changeCount);
+        out.writeBoolean(persisted);
+    }
+
+    protected void readChangeState(ObjectDataInput in) throws IOException {
+        changeMask = in.readLong();
+        changeCount = in.readLong();
+        persisted = in.readBoolean();
+    }
+}
+
+// Table and column layout of a tracked entity; the column index is the bit used in the change mask.
+final class EntityTable<T> {
+
+    private final String tableName;
+    private final String idColumn;
+    private final List<String> columns = new ArrayList<>();
+    private final List<Function<T, Object>> getters = new ArrayList<>();
+
+    EntityTable(String tableName, String idColumn) {
+        this.tableName = tableName;
+        this.idColumn = idColumn;
+    }
+
+    EntityTable<T> column(String name, Function<T, Object> getter) {
+        if (columns.size() == Long.SIZE) {
+            throw new IllegalStateException("At most 64 tracked columns per table");
+        }
+        columns.add(name);
+        getters.add(getter);
+        return this;
+    }
+
+    String updateStatement(long changeMask) {
+        StringJoiner assignments = new StringJoiner(", ");
+        for (int i = 0; i < columns.size(); i++) {
+            if ((changeMask & (1L << i)) != 0) {
+                assignments.add(columns.get(i) + " = ?");
+            }
+        }
+        return "UPDATE " + tableName + " SET " + assignments + " WHERE " + idColumn + " = ?";
+    }
+
+    Object[] updateArguments(long changeMask, Object id, T entity) {
+        List<Object> arguments = new ArrayList<>(Long.bitCount(changeMask) + 1);
+        for (int i = 0; i < getters.size(); i++) {
+            if ((changeMask & (1L << i)) != 0) {
+                arguments.add(getters.get(i).apply(entity));
+            }
+        }
+        arguments.add(id);
+        return arguments.toArray();
+    }
+}
+
+/**
+ * Writes only the changed columns of persisted entities: pending updates are grouped by change mask and each
+ * group becomes one JDBC batch of the same UPDATE statement. New entities still go through the repository
+ * (delegate), as do entities whose UPDATE matched no row (e.g. deleted in the database meanwhile), so no change
+ * is lost. Entities read back from the database are marked persisted with an empty mask.
+ *
+ * <p>Once written, the copy in the map is marked persisted and its mask cleared by an entry processor, unless it
+ * changed again since it was handed to the store. That is a map write, so Hazelcast stores the entry once more;
+ * with an empty mask that store writes nothing.
+ */
+class DeltaMapStore<ID, T extends DirtyTrackingEntity> implements MapStore<ID, T>, MapLoaderLifecycleSupport {
+
+    private final MapStore<ID, T> delegate;
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityTable<T> table;
+    private volatile IMap<ID, T> map;
+
+    DeltaMapStore(MapStore<ID, T> delegate, JdbcTemplate jdbcTemplate, EntityTable<T> table) {
+        this.delegate = delegate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+    }
+
+    @Override
+    public void store(ID key, T value) {
+        storeAll(Map.of(key, value));
+    }
+
+    @Override
+    public void init(HazelcastInstance hazelcastInstance, Properties properties, String mapName) {
+        this.map = hazelcastInstance.getMap(mapName);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void storeAll(Map<ID, T> map) {
+        Map<ID, T> fullSaves = new LinkedHashMap<>();
+        Map<Long, Map<ID, T>> updatesByMask = new HashMap<>();
+        map.forEach((id, entity) -> {
+            if (!entity.isPersisted()) {
+                fullSaves.put(id, entity);
+            } else if (entity.getChangeMask() != 0) {
+                updatesByMask.computeIfAbsent(entity.getChangeMask(), mask -> new LinkedHashMap<>()).put(id, entity);
+            }
+        });
+        updatesByMask.forEach((mask, entities) -> {
+            List<ID> ids = new ArrayList<>(entities.keySet());
+            List<Object[]> arguments = new ArrayList<>(ids.size());
+            ids.forEach(id -> arguments.add(table.updateArguments(mask, id, entities.get(id))));
+            int[] counts = jdbcTemplate.batchUpdate(table.updateStatement(mask), arguments);
+            for (int i = 0; i < counts.length; i++) {
+                // SUCCESS_NO_INFO (-2) means the driver does not report counts, not that nothing matched
+                if (counts[i] == 0) {
+                    fullSaves.put(ids.get(i), entities.get(ids.get(i)));
+                }
+            }
+        });
+        if (!fullSaves.isEmpty()) {
+            delegate.storeAll(fullSaves);
+        }
+        markWritten(map);
+    }
+
+    @Override
+    public void delete(ID key) {
+        delegate.delete(key);
+    }
+
+    @Override
+    public void deleteAll(Collection<ID> keys) {
+        delegate.deleteAll(keys);
+    }
+
+    @Override
+    public T load(ID key) {
+        T entity = delegate.load(key);
+        if (entity != null) {
+            entity.markPersisted();
+        }
+        return entity;
+    }
+
+    @Override
+    public Map<ID, T> loadAll(Collection<ID> keys) {
+        Map<ID, T> loaded = delegate.loadAll(keys);
+        loaded.values().forEach(DirtyTrackingEntity::markPersisted);
+        return loaded;
+    }
+
+    @Override
+    public Iterable<ID> loadAllKeys() {
+        return delegate.loadAllKeys();
+    }
+
+    private void markWritten(Map<ID, T> written) {
+        IMap<ID, T> map = this.map;
+        if (map == null) {
+            return;
+        }
+        written.forEach((id, entity) -> {
+            // Nothing to record for an entry that was persisted with an empty mask already
+            if (!entity.isPersisted() || entity.getChangeMask() != 0) {
+                map.submitToKey(id, new MarkWritten<>(entity.getChangeCount()));
+            }
+        });
+    }
+
+    // Marks the map's copy persisted; clears its mask only if it has not changed since the written state
+    private static final class MarkWritten<ID, T extends DirtyTrackingEntity> implements EntryProcessor<ID, T, Void> {
+
+        private final long writtenChangeCount;
+
+        private MarkWritten(long writtenChangeCount) {
+            this.writtenChangeCount = writtenChangeCount;
+        }
+
+        @Override
+        public Void process(Map.Entry<ID, T> entry) {
+            T entity = entry.getValue();
+            if (entity != null && entity.getChangeCount() == writtenChangeCount
+                    && (!entity.isPersisted() || entity.getChangeMask() != 0)) {
+                entity.markPersisted();
+                entry.setValue(entity);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+import com.hazelcast.cluster.Member;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+import com.hazelcast.core.IExecutorService;
+import com.hazelcast.core.MemberLeftException;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Marks a String field whose values repeat across many entries (city, street, skill name); see DictionaryEncodingSerializer.
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+@interface LowCardinality {
+}
+
+/**
+ * Cluster-wide, append-only string dictionary. Codes are dense ints handed out by an entry processor on a
+ * counter entry, so the highest code handed out is the dictionary version. A new string's reverse mapping is
+ * written first, then every member is sent the code and must acknowledge it, and only then is the string published
+ * in the forward map. If two members race on the same string, the loser's code stays valid but unused.
+ *
+ * <p>Serializers write only published codes, so every member that can receive one already knows it: the members
+ * present at publication acknowledged it, and members joining later load the whole reverse map in
+ * {@link #bind(HazelcastInstance)}. Members must bind right after the instance starts, before they serve reads.
+ * Clients use {@link #bindClient(HazelcastInstance)}; they are not asked to acknowledge, so a client reading a code
+ * it has not received yet fetches it, which is safe because client deserialization never runs on a partition
+ * thread. An unpublished string is written as a literal while its code is assigned in the background; call
+ * {@link #encode(String)} outside serialization to have codes ready up front.
+ */
+class StringDictionary {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StringDictionary.class);
+    private static final String COUNTER_KEY = "next";
+    private static final long CONFIRM_TIMEOUT_SECONDS = 30;
+    // Bound member-side dictionaries by instance and dictionary name, for LearnCode
+    private static final Map<String, StringDictionary> MEMBER_DICTIONARIES = new ConcurrentHashMap<>();
+
+    private final String name;
+    // Published codes, safe to write
+    private final Map<String, Integer> localCodes = new ConcurrentHashMap<>();
+    // Assigned but not yet acknowledged by every member; retried with the same code
+    private final Map<String, Integer> unconfirmed = new ConcurrentHashMap<>();
+    private final Set<String> assigning = ConcurrentHashMap.newKeySet();
+    private volatile String[] localValues = new String[256];
+    private volatile boolean remoteReads;
+    private volatile IMap<String, Integer> codes;
+    private volatile IMap<Integer, String> values;
+    private volatile IMap<String, Integer> counter;
+    private volatile IExecutorService executor;
+    private final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "string-dictionary");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    StringDictionary(String name) {
+        this.name = name;
+    }
+
+    // On a member, once it is up and before it serves reads; until then strings are written as literals
+    void bind(HazelcastInstance hazelcastInstance) {
+        // Registered first, so acknowledgements requested during the preload are not refused
+        MEMBER_DICTIONARIES.put(registryKey(hazelcastInstance, name), this);
+        connect(hazelcastInstance);
+    }
+
+    void bindClient(HazelcastInstance client) {
+        remoteReads = true;
+        connect(client);
+    }
+
+    // Blocking: looks up or assigns the code with remote calls. Not for use inside a serializer.
+    int encode(String value) {
+        Integer code = localCodes.get(value);
+        if (code != null) {
+            return code;
+        }
+        IMap<String, Integer> codes = bound(this.codes);
+        code = codes.get(value);
+        if (code == null) {
+            int assigned = unconfirmed.computeIfAbsent(value,
+                    unused -> bound(counter).executeOnKey(COUNTER_KEY, new NextCode()));
+            values.set(assigned, value);
+            confirm(assigned, value);
+            Integer existing = codes.putIfAbsent(value, assigned);
+            unconfirmed.remove(value);
+            code = existing != null ? existing : assigned;
+        }
+        remember(code, value);
+        localCodes.putIfAbsent(value, code);
+        return code;
+    }
+
+    // Published code of value, or -1 after starting its assignment in the background
+    int localCode(String value) {
+        Integer code = localCodes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (codes != null && assigning.add(value)) {
+            background.execute(() -> {
+                try {
+                    encode(value);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Assigning a code in dictionary {} failed; retrying on next use", name, e);
+                } finally {
+                    assigning.remove(value);
+                }
+            });
+        }
+        return -1;
+    }
+
+    // Value of a published code, or null if this member is not bound yet; clients fetch codes they lack
+    String localValue(int code) {
+        String[] table = localValues;
+        String value = code < table.length ? table[code] : null;
+        if (value == null && remoteReads) {
+            value = values.get(code);
+            if (value != null) {
+                remember(code, value);
+            }
+        }
+        return value;
+    }
+
+    int version() {
+        Integer next = bound(counter).get(COUNTER_KEY);
+        return next == null ? 0 : next;
+    }
+
+    private void connect(HazelcastInstance hazelcastInstance) {
+        IMap<Integer, String> values = hazelcastInstance.getMap("dictionary:" + name + ":values");
+        IMap<String, Integer> codes = hazelcastInstance.getMap("dictionary:" + name + ":codes");
+        // Listeners first, so nothing published during the preload is missed
+        values.addEntryListener((EntryAddedListener<Integer, String>) event ->
+                remember(event.getKey(), event.getValue()), true);
+        codes.addEntryListener((EntryAddedListener<String, Integer>) event ->
+                localCodes.putIfAbsent(event.getKey(), event.getValue()), true);
+        values.entrySet().forEach(entry -> remember(entry.getKey(), entry.getValue()));
+        codes.entrySet().forEach(entry -> localCodes.putIfAbsent(entry.getKey(), entry.getValue()));
+        this.counter = hazelcastInstance.getMap("dictionary:" + name + ":counter");
+        this.executor = hazelcastInstance.getExecutorService("dictionary:" + name);
+        this.codes = codes;
+        this.values = values;
+    }
+
+    // Returns once every current member holds the code; a member that left no longer needs it
+    private void confirm(int code, String value) {
+        Map<Member, Future<Boolean>> acknowledgements = executor.submitToAllMembers(new LearnCode(name, code, value));
+        for (Map.Entry<Member, Future<Boolean>> acknowledgement : acknowledgements.entrySet()) {
+            try {
+                if (!acknowledgement.getValue().get(CONFIRM_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Dictionary " + name + " is not bound on member "
+                            + acknowledgement.getKey());
+                }
+            } catch (ExecutionException e) {
+                if (!(e instanceof MemberLeftException) && !(e.getCause() instanceof MemberLeftException)) {
+                    throw new IllegalStateException("Member " + acknowledgement.getKey() + " did not learn code "
+                            + code + " of dictionary " + name, e);
+                }
+            } catch (TimeoutException e) {
+                throw new IllegalStateException("Member " + acknowledgement.getKey() + " did not learn code "
+                        + code + " of dictionary " + name + " in time", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while publishing to dictionary " + name, e);
+            }
+        }
+    }
+
+    private synchronized void remember(int code, String value) {
+        String[] table = localValues;
+        if (code >= table.length) {
+            table = Arrays.copyOf(table, Math.max(code + 1, table.length * 2));
+        }
+        table[code] = value;
+        localValues = table;
+    }
+
+    private <M> M bound(M map) {
+        if (map == null) {
+            throw new IllegalStateException("Dictionary " + name + " is not bound to a Hazelcast instance yet");
+        }
+        return map;
+    }
+
+    private static String registryKey(HazelcastInstance hazelcastInstance, String name) {
+        return hazelcastInstance.getName() + "/" + name;
+    }
+
+    private static final class NextCode implements EntryProcessor<String, Integer, Integer> {
+
+        @Override
+        public Integer process(Map.Entry<String, Integer> entry) {
+            int code = entry.getValue() == null ? 0 : entry.getValue();
+            entry.setValue(code + 1);
+            return code;
+        }
+    }
+
+    // Runs on every member before a code is published; false if the member has not bound the dictionary
+    private static final class LearnCode implements Callable<Boolean>, HazelcastInstanceAware, Serializable {
+
+        private final String name;
+        private final int code;
+        private final String value;
+        private transient HazelcastInstance hazelcastInstance;
+
+        private LearnCode(String name, int code, String value) {
+            this.name = name;
+            this.code = code;
+            this.value = value;
+        }
+
+        @Override
+        public void setHazelcastInstance(HazelcastInstance hazelcastInstance) {
+            this.hazelcastInstance = hazelcastInstance;
+        }
+
+        @Override
+        public Boolean call() {
+            StringDictionary dictionary = MEMBER_DICTIONARIES.get(registryKey(hazelcastInstance, name));
+            if (dictionary == null) {
+                return false;
+            }
+            dictionary.remember(code, value);
+            return true;
+        }
+    }
+}
+
+/**
+ * Field-by-field serializer that writes {@link LowCardinality} String fields as StringDictionary codes and all
+ * other fields with Hazelcast's own serializers. The type needs a no-arg constructor; fields are written from the
+ * topmost superclass down, each class's in name order, so adding a field is a breaking change for stored data
+ * just like with IdentifiedDataSerializable.
+ *
+ * <p>On members only the dictionary's local tables are consulted, never the cluster: a string without a published
+ * code is written inline, and a published code is known to every bound member, so reads do not wait on the
+ * dictionary.
+ */
+class DictionaryEncodingSerializer<T> implements StreamSerializer<T> {
+
+    private static final int NULL_CODE = -1;
+    private static final int LITERAL = -2;
+
+    private final int typeId;
+    private final StringDictionary dictionary;
+    private final MethodHandle constructor;
+    private final VarHandle[] fields;
+    private final boolean[] encoded;
+
+    DictionaryEncodingSerializer(Class<T> type, int typeId, StringDictionary dictionary) {
+        this.typeId = typeId;
+        this.dictionary = dictionary;
+        try {
+            this.constructor = MethodHandles.privateLookupIn(type, MethodHandles.lookup())
+                    .findConstructor(type, MethodType.methodType(void.class));
+            // Superclass fields too, e.g. the change mask of a DirtyTrackingEntity
+            List<Field> persistent = new ArrayList<>();
+            for (Class<?> declaring = type; declaring != Object.class; declaring = declaring.getSuperclass()) {
+                List<Field> declared = new ArrayList<>();
+                for (Field field : declaring.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                        declared.add(field);
+                    }
+                }
+                declared.sort(Comparator.comparing(Field::getName));
+                persistent.addAll(0, declared);
+            }
+            this.fields = new VarHandle[persistent.size()];
+            this.encoded = new boolean[persistent.size()];
+            for (int i = 0; i < fields.length; i++) {
+                Field field = persistent.get(i);
+                encoded[i] = field.isAnnotationPresent(LowCardinality.class);
+                if (encoded[i] && field.getType() != String.class) {
+                    throw new IllegalArgumentException("@LowCardinality field " + field + " is not a String");
+                }
+                fields[i] = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup())
+                        .unreflectVarHandle(field);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(type.getName() + " needs a no-arg constructor", e);
+        }
+    }
+
+    static <T> DictionaryEncodingSerializer<T> register(Config config, Class<T> type, int typeId,
+                                                        StringDictionary dictionary) {
+        DictionaryEncodingSerializer<T> serializer = new DictionaryEncodingSerializer<>(type, typeId, dictionary);
+        config.getSerializationConfig().addSerializerConfig(new SerializerConfig()
+                .setTypeClass(type)
+                .setImplementation(serializer));
+        return serializer;
+    }
+
+    @Override
+    public int getTypeId() {
+        return typeId;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, T object) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            Object value = fields[i].get(object);
+            if (encoded[i]) {
+                int code = value == null ? NULL_CODE : dictionary.localCode((String) value);
+                if (value != null && code < 0) {
+                    out.writeInt(LITERAL);
+                    out.writeString((String) value);
+                } else {
+                    out.writeInt(code);
+                }
+            } else {
+                out.writeObject(value);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T read(ObjectDataInput in) throws IOException {
+        T object;
+        try {
+            object = (T) constructor.invoke();
+        } catch (Throwable e) {
+            throw new IOException("Cannot instantiate " + constructor.type().returnType().getName(), e);
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (encoded[i]) {
+                fields[i].set(object, readEncoded(in));
+            } else {
+                fields[i].set(object, (Object) in.readObject());
+            }
+        }
+        return object;
+    }
+
+    private String readEncoded(ObjectDataInput in) throws IOException {
+        int code = in.readInt();
+        if (code == NULL_CODE) {
+            return null;
+        }
+        if (code == LITERAL) {
+            return in.readString();
+        }
+        String value = dictionary.localValue(code);
+        if (value == null) {
+            throw new IOException("Dictionary code " + code + " read before the dictionary was bound on this member");
+        }
+        return value;
+    }
+}
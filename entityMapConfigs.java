@@ -0,0 +1,50 @@
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MapStoreConfig;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.Serializable;
+import java.time.Duration;
+
+// Shared MapConfig factory for the persons / addresses / skills entity maps.
+final class EntityMapConfigs {
+
+    // Per map and member: concurrent database calls, the deadline of one MapStore call and keys per bulk chunk
+    private static final int MAX_DATABASE_CALLS = 16;
+    private static final Duration MAP_STORE_TIMEOUT = Duration.ofSeconds(10);
+    private static final int CHUNK_SIZE = 100;
+
+    private EntityMapConfigs() {
+    }
+
+    static <ID extends Serializable, T> MapConfig createMapConfig(String mapName,
+                                                                  CrudRepository<T, ID> repository,
+                                                                  PlatformTransactionManager transactionManager,
+                                                                  CacheEvictionMode evictionMode,
+                                                                  int maxSize) {
+        return createMapConfig(mapName, repository, transactionManager, evictionMode, maxSize, 0);
+    }
+
+    // timeToLiveSeconds = 0 means no expiry; read TTL maps through RefreshAheadMap to hide reload latency
+    static <ID extends Serializable, T> MapConfig createMapConfig(String mapName,
+                                                                  CrudRepository<T, ID> repository,
+                                                                  PlatformTransactionManager transactionManager,
+                                                                  CacheEvictionMode evictionMode,
+                                                                  int maxSize,
+                                                                  int timeToLiveSeconds) {
+        VirtualThreadMapStore<ID, T> virtualThreadMapStore = new VirtualThreadMapStore<>(
+                new GenericMapStore<>(repository), transactionManager, mapName, MAX_DATABASE_CALLS, MAP_STORE_TIMEOUT,
+                CHUNK_SIZE);
+        MapStoreConfig mapStoreConfig = new MapStoreConfig()
+                .setEnabled(true)
+                .setImplementation(new SingleFlightMapStore<>(virtualThreadMapStore))
+                .setWriteDelaySeconds(5)
+                .setWriteBatchSize(10);
+
+        return new MapConfig(mapName)
+                .setBackupCount(1)
+                .setTimeToLiveSeconds(timeToLiveSeconds)
+                .setEvictionConfig(TinyLfuEvictionComparator.evictionConfig(mapName, evictionMode, maxSize))
+                .setMapStoreConfig(mapStoreConfig);
+    }
+}
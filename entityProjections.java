@@ -0,0 +1,102 @@
+import com.hazelcast.core.ReadOnly;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.IMap;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Field projections over the entity maps. A read-only entry processor runs on the members that own the keys and
+ * only the requested attributes cross the network, as one Object[] per entry in the order the fields were given.
+ * Only the partitions of the requested keys are visited, and keys that are not in memory are read through the
+ * MapLoader first, like get.
+ */
+final class EntityProjections {
+
+    private EntityProjections() {
+    }
+
+    // e.g. project(personCache, ids, "name", "address.city") -> {id -> [name, city]}
+    static <K, V> Map<K, Object[]> project(IMap<K, V> map, Collection<K> keys, String... fields) {
+        if (keys.isEmpty()) {
+            return new HashMap<>();
+        }
+        Map<K, Object[]> projected = new HashMap<>(map.executeOnKeys(new LinkedHashSet<>(keys), new ProjectFields<>(fields)));
+        // Absent keys come back without a row or with a null one
+        projected.values().removeIf(row -> row == null);
+        return projected;
+    }
+
+    // Single-field shortcut for list endpoints, e.g. projectField(personCache, ids, "name")
+    @SuppressWarnings("unchecked")
+    static <K, V, F> Map<K, F> projectField(IMap<K, V> map, Collection<K> keys, String field) {
+        Map<K, F> projected = new HashMap<>();
+        project(map, keys, field).forEach((key, values) -> projected.put(key, (F) values[0]));
+        return projected;
+    }
+
+    // Reads dotted getter paths off the entity; ReadOnly and no backup processor, so no locking or backup traffic
+    private static final class ProjectFields<K, V> implements EntryProcessor<K, V, Object[]>, ReadOnly {
+
+        private static final ConcurrentMap<String, Method> GETTERS = new ConcurrentHashMap<>();
+
+        private final String[] fields;
+
+        private ProjectFields(String[] fields) {
+            this.fields = fields;
+        }
+
+        @Override
+        public Object[] process(Map.Entry<K, V> entry) {
+            V value = entry.getValue();
+            if (value == null) {
+                return null;
+            }
+            Object[] row = new Object[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                row[i] = read(value, fields[i]);
+            }
+            return row;
+        }
+
+        @Override
+        public EntryProcessor<K, V, Object[]> getBackupProcessor() {
+            return null;
+        }
+
+        private static Object read(Object target, String path) {
+            Object current = target;
+            for (String property : path.split("\\.")) {
+                if (current == null) {
+                    return null;
+                }
+                try {
+                    current = getter(current.getClass(), property).invoke(current);
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new IllegalStateException("Cannot read " + path + " of " + target.getClass().getName(), e);
+                }
+            }
+            return current;
+        }
+
+        private static Method getter(Class<?> type, String property) {
+            return GETTERS.computeIfAbsent(type.getName() + "#" + property, cacheKey -> {
+                String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+                for (String name : new String[] {"get" + suffix, "is" + suffix, property}) {
+                    try {
+                        return type.getMethod(name);
+                    } catch (NoSuchMethodException e) {
+                        // try the next naming convention
+                    }
+                }
+                throw new IllegalArgumentException("No getter for " + property + " on " + type.getName());
+            });
+        }
+    }
+}
@@ -0,0 +1,290 @@
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.replicatedmap.ReplicatedMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free approximate top-K: a count-min sketch (4 rows of atomic counters) estimates every key's frequency
+ * and the at most {@code k} keys with the highest estimates are kept as candidates. A new key only displaces a
+ * candidate when its estimate exceeds the smallest candidate's, so the candidate set changes rarely once the
+ * hot keys are in it. {@link #decay()} halves everything, turning the counts into a sliding window.
+ */
+final class TopKSketch<K> {
+
+    private static final int DEPTH = 4;
+
+    private final int k;
+    private final int mask;
+    private final AtomicLongArray counters;
+    private final AtomicLong total = new AtomicLong();
+    private final Set<K> candidates = ConcurrentHashMap.newKeySet();
+    private volatile long smallestCandidate;
+
+    TopKSketch(int k, int width) {
+        int rowWidth = Integer.highestOneBit(Math.max(64, width - 1)) << 1;
+        this.k = k;
+        this.mask = rowWidth - 1;
+        this.counters = new AtomicLongArray(DEPTH * rowWidth);
+    }
+
+    long add(K key) {
+        total.incrementAndGet();
+        int hash = spread(key.hashCode());
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(hash, row)));
+        }
+        // Known candidates cost a read only; the map is written when the top-K changes
+        if (!candidates.contains(key)) {
+            if (candidates.size() < k) {
+                candidates.add(key);
+            } else if (estimate > smallestCandidate) {
+                displaceSmallest(key, estimate);
+            }
+        }
+        return estimate;
+    }
+
+    long estimate(K key) {
+        int hash = spread(key.hashCode());
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    long total() {
+        return total.get();
+    }
+
+    // Candidates with their current estimates, highest first
+    List<Map.Entry<K, Long>> topK() {
+        List<Map.Entry<K, Long>> top = new ArrayList<>(candidates.size());
+        candidates.forEach(key -> top.add(Map.entry(key, estimate(key))));
+        top.sort(Map.Entry.<K, Long>comparingByValue().reversed());
+        return top;
+    }
+
+    void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            long value;
+            do {
+                value = counters.get(i);
+            } while (value != 0 && !counters.compareAndSet(i, value, value >>> 1));
+        }
+        total.updateAndGet(value -> value >>> 1);
+        smallestCandidate >>>= 1;
+    }
+
+    private void displaceSmallest(K key, long estimate) {
+        K smallestKey = null;
+        long smallest = Long.MAX_VALUE;
+        for (K candidate : candidates) {
+            long candidateEstimate = estimate(candidate);
+            if (candidateEstimate < smallest) {
+                smallest = candidateEstimate;
+                smallestKey = candidate;
+            }
+        }
+        smallestCandidate = smallest;
+        // Losing a race here only costs accuracy; another thread may have displaced the same key
+        if (smallestKey != null && estimate > smallest && candidates.remove(smallestKey)) {
+            candidates.add(key);
+        }
+    }
+
+    private int index(int hash, int row) {
+        int rowHash = spread(hash + row * 0x9E3779B9);
+        return row * (mask + 1) + (rowHash & mask);
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+}
+
+/**
+ * Spreads reads of hot keys over the cluster. Each member counts the reads it serves in a TopKSketch; every
+ * {@code windowMillis} the keys above {@code hotShare} of the window's reads are copied into the ReplicatedMap
+ * {@code hot:<map>}, which every member holds in full, so reads of those keys are local. A copy is kept for
+ * {@code holdMillis} after the last window any member saw the key hot, then removed by whichever member sweeps
+ * first.
+ *
+ * <p>The partition owner of a hot key refreshes or drops its copy when the key changes; replicated maps are
+ * eventually consistent, so a read right after a write can briefly return the previous value.
+ */
+class HotKeyReplicatedMap<K, V> implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HotKeyReplicatedMap.class);
+
+    private final IMap<K, V> map;
+    private final ReplicatedMap<K, HotCopy<V>> hotCopies;
+    private final TopKSketch<K> sketch;
+    private final double hotShare;
+    private final long holdMillis;
+    private final UUID listenerId;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hot-keys");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    HotKeyReplicatedMap(HazelcastInstance hazelcastInstance, String mapName, int topK, double hotShare,
+                        long windowMillis, long holdMillis) {
+        this.map = hazelcastInstance.getMap(mapName);
+        this.hotCopies = hazelcastInstance.getReplicatedMap("hot:" + mapName);
+        this.sketch = new TopKSketch<>(topK, topK * 256);
+        this.hotShare = hotShare;
+        this.holdMillis = holdMillis;
+        this.listenerId = map.addLocalEntryListener(new HotCopyUpdater());
+        scheduler.scheduleWithFixedDelay(this::promoteAndDemote, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    V get(K key) {
+        recordAccess(key);
+        HotCopy<V> copy = hotCopies.get(key);
+        return copy != null ? copy.getValue() : map.get(key);
+    }
+
+    CompletionStage<V> getAsync(K key) {
+        recordAccess(key);
+        HotCopy<V> copy = hotCopies.get(key);
+        return copy != null ? CompletableFuture.completedFuture(copy.getValue()) : map.getAsync(key);
+    }
+
+    // Hot keys are read from the local copies, the rest with one getAll; absent keys are left out
+    Map<K, V> getAll(Set<K> keys) {
+        Map<K, V> values = new HashMap<>();
+        Set<K> misses = new HashSet<>();
+        for (K key : keys) {
+            recordAccess(key);
+            HotCopy<V> copy = hotCopies.get(key);
+            if (copy != null) {
+                values.put(key, copy.getValue());
+            } else {
+                misses.add(key);
+            }
+        }
+        if (!misses.isEmpty()) {
+            values.putAll(map.getAll(misses));
+        }
+        return values;
+    }
+
+    // For reads that bypass get(), e.g. aggregate requests that fan out to several maps by the same ID
+    void recordAccess(K key) {
+        sketch.add(key);
+    }
+
+    boolean isHot(K key) {
+        return hotCopies.containsKey(key);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        map.removeEntryListener(listenerId);
+    }
+
+    void promoteAndDemote() {
+        try {
+            long now = System.currentTimeMillis();
+            long threshold = Math.max(1, (long) (sketch.total() * hotShare));
+            for (Map.Entry<K, Long> candidate : sketch.topK()) {
+                if (candidate.getValue() < threshold) {
+                    break;
+                }
+                // Always the owner's current value: re-putting the replica's could revive a value already replaced
+                K key = candidate.getKey();
+                V value = map.get(key);
+                if (value != null) {
+                    hotCopies.put(key, new HotCopy<>(value, now + holdMillis));
+                }
+            }
+            // ReplicatedMap views are read-only; expired copies are removed one by one
+            for (Map.Entry<K, HotCopy<V>> entry : hotCopies.entrySet()) {
+                if (entry.getValue().getHotUntil() < now) {
+                    hotCopies.remove(entry.getKey());
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Hot key promotion for {} failed", map.getName(), e);
+        } finally {
+            sketch.decay();
+        }
+    }
+
+    private final class HotCopyUpdater implements EntryUpdatedListener<K, V>, EntryRemovedListener<K, V>,
+            EntryEvictedListener<K, V>, EntryExpiredListener<K, V> {
+
+        @Override
+        public void entryUpdated(EntryEvent<K, V> event) {
+            HotCopy<V> copy = hotCopies.get(event.getKey());
+            if (copy != null) {
+                hotCopies.put(event.getKey(), new HotCopy<>(event.getValue(), copy.getHotUntil()));
+            }
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<K, V> event) {
+            hotCopies.remove(event.getKey());
+        }
+
+        // An evicted or expired entry may be reloaded with different data; the copy must not outlive it
+        @Override
+        public void entryEvicted(EntryEvent<K, V> event) {
+            hotCopies.remove(event.getKey());
+        }
+
+        @Override
+        public void entryExpired(EntryEvent<K, V> event) {
+            hotCopies.remove(event.getKey());
+        }
+    }
+
+    static final class HotCopy<V> implements Serializable {
+
+        private final V value;
+        private final long hotUntil;
+
+        HotCopy(V value, long hotUntil) {
+            this.value = value;
+            this.hotUntil = hotUntil;
+        }
+
+        V getValue() {
+            return value;
+        }
+
+        long getHotUntil() {
+            return hotUntil;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Learns which components of an aggregate callers actually touch. A component is worth prefetching once it was
+ * used in at least {@code prefetchRatio} of the aggregates handed out, judged after {@code minimumSamples}
+ * aggregates; until then nothing is prefetched.
+ */
+final class AccessProfile {
+
+    private final double prefetchRatio;
+    private final long minimumSamples;
+    private final LongAdder aggregates = new LongAdder();
+    private final Map<String, LongAdder> accesses = new ConcurrentHashMap<>();
+
+    AccessProfile(double prefetchRatio, long minimumSamples) {
+        this.prefetchRatio = prefetchRatio;
+        this.minimumSamples = minimumSamples;
+    }
+
+    void recordAggregate() {
+        aggregates.increment();
+    }
+
+    void recordAccess(String component) {
+        accesses.computeIfAbsent(component, name -> new LongAdder()).increment();
+    }
+
+    boolean shouldPrefetch(String component) {
+        long total = aggregates.sum();
+        if (total < minimumSamples) {
+            return false;
+        }
+        LongAdder used = accesses.get(component);
+        return used != null && used.sum() >= total * prefetchRatio;
+    }
+}
+
+/**
+ * A component fetched at most once: by {@link #prefetch()} in the background, or by the first {@link #get()},
+ * which then waits for it. A failed fetch is forgotten, so callers already waiting see the error and the next
+ * access fetches again. Only the first get counts as an access in the AccessProfile. {@code onLoaded} runs once
+ * the fetch has succeeded, on whichever thread completed it.
+ */
+final class LazyComponent<T> {
+
+    private final String name;
+    private final Supplier<CompletionStage<T>> fetch;
+    private final AccessProfile profile;
+    private final Runnable onLoaded;
+    private final AtomicReference<CompletableFuture<T>> value = new AtomicReference<>();
+    private volatile boolean accessed;
+
+    LazyComponent(String name, Supplier<CompletionStage<T>> fetch, AccessProfile profile, Runnable onLoaded) {
+        this.name = name;
+        this.fetch = fetch;
+        this.profile = profile;
+        this.onLoaded = onLoaded;
+    }
+
+    void prefetchIfProfiled() {
+        if (profile.shouldPrefetch(name)) {
+            prefetch();
+        }
+    }
+
+    void prefetch() {
+        if (value.get() == null) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            if (value.compareAndSet(null, future)) {
+                try {
+                    fetch.get().whenComplete((result, error) -> {
+                        if (error != null) {
+                            fail(future, error);
+                        } else {
+                            future.complete(result);
+                            onLoaded.run();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    fail(future, e);
+                }
+            }
+        }
+    }
+
+    private void fail(CompletableFuture<T> future, Throwable error) {
+        value.compareAndSet(future, null);
+        future.completeExceptionally(error);
+    }
+
+    T get() {
+        if (!accessed) {
+            accessed = true;
+            profile.recordAccess(name);
+        }
+        return load();
+    }
+
+    // Like get(), without counting as an access
+    T load() {
+        prefetch();
+        return value.get().join();
+    }
+}
+
+/**
+ * View of a person aggregate whose person, address and skills are each read on first use. Components the
+ * AccessProfile says are nearly always used are requested asynchronously as soon as the view is created, so a
+ * caller touching only getPerson() pays for one lookup, while the usual components are already in flight when
+ * they are needed.
+ *
+ * <p>It is deliberately not a PersonAggregate: {@link #toAggregate()} loads what is missing and builds a real one,
+ * and once all three components are loaded, by use or by prefetch, {@code onComplete} receives the full aggregate,
+ * e.g. to cache it.
+ */
+final class LazyPersonAggregate {
+
+    static final String PERSON = "person";
+    static final String ADDRESS = "address";
+    static final String SKILLS = "skills";
+
+    private final LazyComponent<Person> person;
+    private final LazyComponent<Address> address;
+    private final LazyComponent<List<Skill>> skills;
+    private final AtomicInteger unloaded = new AtomicInteger(3);
+    private final Consumer<PersonAggregate> onComplete;
+
+    LazyPersonAggregate(Supplier<CompletionStage<Person>> person, Supplier<CompletionStage<Address>> address,
+                        Supplier<CompletionStage<List<Skill>>> skills, AccessProfile profile,
+                        Consumer<PersonAggregate> onComplete) {
+        profile.recordAggregate();
+        this.onComplete = onComplete;
+        this.person = new LazyComponent<>(PERSON, person, profile, this::componentLoaded);
+        this.address = new LazyComponent<>(ADDRESS, address, profile, this::componentLoaded);
+        this.skills = new LazyComponent<>(SKILLS, skills, profile, this::componentLoaded);
+        // Only once all fields are set: a prefetch may complete, and call back, right away
+        this.person.prefetchIfProfiled();
+        this.address.prefetchIfProfiled();
+        this.skills.prefetchIfProfiled();
+    }
+
+    Person getPerson() {
+        return person.get();
+    }
+
+    Address getAddress() {
+        return address.get();
+    }
+
+    List<Skill> getSkills() {
+        return skills.get();
+    }
+
+    PersonAggregate toAggregate() {
+        return new PersonAggregate(person.load(), address.load(), skills.load());
+    }
+
+    // The last component to load completes the aggregate; load() does not block by then
+    private void componentLoaded() {
+        if (unloaded.decrementAndGet() == 0) {
+            onComplete.accept(toAggregate());
+        }
+    }
+}
@@ -0,0 +1,423 @@
+import com.hazelcast.cluster.Member;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.MapStore;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.partition.MigrationListener;
+import com.hazelcast.partition.MigrationState;
+import com.hazelcast.partition.Partition;
+import com.hazelcast.partition.PartitionService;
+import com.hazelcast.partition.ReplicaMigrationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Periodically writes the partitions this member owns to {@code <dir>/<map>/<partitionId>.snap}. Snapshots are
+ * incremental: a local entry listener marks partitions dirty and only those are rewritten, as are partitions that
+ * migrated to this member. Partitions owned elsewhere are never written, so members may share the directory. Each file starts with
+ * the time its contents were read and the cluster's partition count, followed by Java-serialized key/value
+ * records. It is written to a temp file, forced to disk and then moved into place, so a crash leaves either the
+ * old or the new snapshot.
+ */
+class PartitionSnapshotWriter implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionSnapshotWriter.class);
+
+    private final IMap<Object, Object> map;
+    private final PartitionService partitionService;
+    private final int partitionCount;
+    private final Path mapDirectory;
+    private final Set<Integer> dirtyPartitions = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "partition-snapshots");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    PartitionSnapshotWriter(HazelcastInstance hazelcastInstance, String mapName, Path snapshotDirectory,
+                            long intervalSeconds) {
+        this.map = hazelcastInstance.getMap(mapName);
+        this.partitionService = hazelcastInstance.getPartitionService();
+        this.partitionCount = partitionService.getPartitions().size();
+        this.mapDirectory = snapshotDirectory.resolve(mapName);
+        map.addLocalEntryListener(new DirtyPartitionTracker());
+        partitionService.addMigrationListener(new DirtyPartitionTracker());
+        // Everything is dirty until the first snapshot has been taken
+        partitionService.getPartitions().forEach(partition -> dirtyPartitions.add(partition.getPartitionId()));
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    void snapshot() throws IOException {
+        Files.createDirectories(mapDirectory);
+        long snapshotTime = System.currentTimeMillis();
+        Set<Integer> dirty = new HashSet<>(dirtyPartitions);
+        dirtyPartitions.removeAll(dirty);
+        // Another member's partition is its to write; it marks the partition dirty when it migrates in
+        for (Partition partition : partitionService.getPartitions()) {
+            Member owner = partition.getOwner();
+            if (owner == null || !owner.localMember()) {
+                dirty.remove(partition.getPartitionId());
+            }
+        }
+
+        Map<Integer, Set<Object>> keysByPartition = new HashMap<>();
+        for (Object key : map.localKeySet()) {
+            int partitionId = partitionService.getPartition(key).getPartitionId();
+            if (dirty.contains(partitionId)) {
+                keysByPartition.computeIfAbsent(partitionId, id -> new HashSet<>()).add(key);
+            }
+        }
+        for (Integer partitionId : dirty) {
+            Set<Object> keys = keysByPartition.getOrDefault(partitionId, Set.of());
+            try {
+                writePartition(partitionId, snapshotTime, keys.isEmpty() ? Map.of() : map.getAll(keys));
+            } catch (IOException | RuntimeException e) {
+                dirtyPartitions.add(partitionId);
+                throw e;
+            }
+        }
+        LOGGER.debug("Snapshot of {} dirty partition(s) of {} written", dirty.size(), map.getName());
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Snapshot of {} failed, dirty partitions will be retried", map.getName(), e);
+        }
+    }
+
+    private void writePartition(int partitionId, long snapshotTime, Map<Object, Object> entries) throws IOException {
+        Path target = mapDirectory.resolve(partitionId + ".snap");
+        Path temp = mapDirectory.resolve(partitionId + ".snap.tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+                    1 << 16));
+            out.writeLong(snapshotTime);
+            out.writeInt(partitionCount);
+            out.writeInt(entries.size());
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                out.writeObject(entry.getKey());
+                out.writeObject(entry.getValue());
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // The rename itself is only durable once the directory is
+        try (FileChannel directory = FileChannel.open(mapDirectory, StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+
+    private final class DirtyPartitionTracker implements EntryAddedListener<Object, Object>,
+            EntryUpdatedListener<Object, Object>, EntryRemovedListener<Object, Object>, MigrationListener {
+
+        @Override
+        public void entryAdded(EntryEvent<Object, Object> event) {
+            markDirty(event.getKey());
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<Object, Object> event) {
+            markDirty(event.getKey());
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<Object, Object> event) {
+            markDirty(event.getKey());
+        }
+
+        @Override
+        public void migrationStarted(MigrationState state) {
+        }
+
+        @Override
+        public void migrationFinished(MigrationState state) {
+        }
+
+        @Override
+        public void replicaMigrationCompleted(ReplicaMigrationEvent event) {
+            Member destination = event.getDestination();
+            if (event.getReplicaIndex() == 0 && destination != null && destination.localMember()) {
+                dirtyPartitions.add(event.getPartitionId());
+            }
+        }
+
+        @Override
+        public void replicaMigrationFailed(ReplicaMigrationEvent event) {
+        }
+
+        private void markDirty(Object key) {
+            dirtyPartitions.add(partitionService.getPartition(key).getPartitionId());
+        }
+    }
+}
+
+/**
+ * Serves the initial load from local snapshots. On the first load call every snapshot file of the map is read
+ * sequentially through a memory mapping, then the rows changed in the database since the oldest snapshot
+ * ({@code changedSince}, e.g. a query on an updated_at column) are dropped so that they are read from the
+ * database instead. Hard deletes leave no updated_at behind, so {@code deletedSince} reports the IDs deleted
+ * since then, e.g. from a tombstone table filled by a delete trigger; they are dropped too. Entries are handed out
+ * once and then forgotten; anything not in a snapshot goes to the delegate as usual.
+ *
+ * <p>When the snapshots cover every partition (all members write to a shared directory, or one member owned
+ * everything), {@link #loadAllKeys()} answers from them: the snapshot keys plus the changed IDs, minus the deleted
+ * ones. A key that was both deleted and changed since is left out and read through on first access. Otherwise it
+ * falls back to the delegate's key scan.
+ *
+ * <p>The snapshot only serves the initial load. It is dropped once it is handed out completely, when
+ * {@link #finishRestore()} is called (e.g. after the map reported itself loaded), or at the latest
+ * {@code restoreWindow} after it was read, so a later miss never sees a stale snapshot row. Stores and deletes
+ * drop their keys from it straight away.
+ */
+class SnapshotRestoringMapStore<ID, T> implements MapStore<ID, T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotRestoringMapStore.class);
+
+    private final MapStore<ID, T> delegate;
+    private final Path mapDirectory;
+    private final Function<Long, Collection<ID>> changedSince;
+    private final Function<Long, Collection<ID>> deletedSince;
+    private final long restoreWindowMillis;
+    private volatile Map<ID, T> restored;
+    // All keys of the map per the snapshots and the change feed; null unless every partition had a snapshot
+    private volatile Set<ID> restoredKeys;
+    private volatile boolean finished;
+    private long restoreDeadline;
+
+    SnapshotRestoringMapStore(MapStore<ID, T> delegate, String mapName, Path snapshotDirectory,
+                              Function<Long, Collection<ID>> changedSince,
+                              Function<Long, Collection<ID>> deletedSince, Duration restoreWindow) {
+        this.delegate = delegate;
+        this.mapDirectory = snapshotDirectory.resolve(mapName);
+        this.changedSince = changedSince;
+        this.deletedSince = deletedSince;
+        this.restoreWindowMillis = restoreWindow.toMillis();
+    }
+
+    // Ends the restore: from now on every load goes to the delegate
+    void finishRestore() {
+        finished = true;
+        Map<ID, T> snapshot = restored;
+        if (snapshot != null && !snapshot.isEmpty()) {
+            LOGGER.info("Dropping {} snapshot entries of {} not asked for by the initial load", snapshot.size(),
+                    mapDirectory);
+        }
+        restored = null;
+    }
+
+    @Override
+    public T load(ID key) {
+        T value = restored().remove(key);
+        return value != null ? value : delegate.load(key);
+    }
+
+    @Override
+    public Map<ID, T> loadAll(Collection<ID> keys) {
+        Map<ID, T> snapshot = restored();
+        Map<ID, T> loaded = new HashMap<>(keys.size() * 2);
+        List<ID> missing = new ArrayList<>();
+        for (ID key : keys) {
+            T value = snapshot.remove(key);
+            if (value != null) {
+                loaded.put(key, value);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            loaded.putAll(delegate.loadAll(missing));
+        }
+        return loaded;
+    }
+
+    @Override
+    public Iterable<ID> loadAllKeys() {
+        restored();
+        Set<ID> keys = restoredKeys;
+        restoredKeys = null;
+        if (keys == null) {
+            return delegate.loadAllKeys();
+        }
+        LOGGER.info("Serving {} keys of {} from snapshots", keys.size(), mapDirectory);
+        return keys;
+    }
+
+    @Override
+    public void store(ID key, T value) {
+        forget(key);
+        delegate.store(key, value);
+    }
+
+    @Override
+    public void storeAll(Map<ID, T> map) {
+        map.keySet().forEach(this::forget);
+        delegate.storeAll(map);
+    }
+
+    @Override
+    public void delete(ID key) {
+        forget(key);
+        delegate.delete(key);
+    }
+
+    @Override
+    public void deleteAll(Collection<ID> keys) {
+        keys.forEach(this::forget);
+        delegate.deleteAll(keys);
+    }
+
+    private void forget(ID key) {
+        Map<ID, T> snapshot = restored;
+        if (snapshot != null) {
+            snapshot.remove(key);
+        }
+    }
+
+    // The snapshot while the restore lasts, otherwise an empty map
+    private Map<ID, T> restored() {
+        if (finished) {
+            return new HashMap<>();
+        }
+        Map<ID, T> snapshot = restored;
+        if (snapshot == null) {
+            synchronized (this) {
+                if (finished) {
+                    return new HashMap<>();
+                }
+                if (restored == null) {
+                    Map<ID, T> entries = readSnapshots();
+                    // Written before the volatile publish of restored, so readers see it
+                    restoreDeadline = System.currentTimeMillis() + restoreWindowMillis;
+                    restored = entries;
+                }
+                snapshot = restored;
+            }
+        }
+        if (snapshot.isEmpty() || System.currentTimeMillis() > restoreDeadline) {
+            finishRestore();
+        }
+        return snapshot;
+    }
+
+    private Map<ID, T> readSnapshots() {
+        Map<ID, T> entries = new ConcurrentHashMap<>();
+        if (!Files.isDirectory(mapDirectory)) {
+            return entries;
+        }
+        long oldestSnapshot = Long.MAX_VALUE;
+        int snapshotFiles = 0;
+        int partitionCount = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(mapDirectory, "*.snap")) {
+            for (Path file : files) {
+                long[] header = readSnapshot(file, entries);
+                oldestSnapshot = Math.min(oldestSnapshot, header[0]);
+                partitionCount = (int) header[1];
+                snapshotFiles++;
+            }
+        } catch (IOException e) {
+            // A bad snapshot only costs a database load; never fail the restart over it
+            LOGGER.warn("Could not read snapshots in {}, loading from the database", mapDirectory, e);
+            entries.clear();
+            return entries;
+        }
+        if (snapshotFiles > 0) {
+            Collection<ID> changed = changedSince.apply(oldestSnapshot);
+            Collection<ID> deleted = deletedSince.apply(oldestSnapshot);
+            changed.forEach(entries::remove);
+            deleted.forEach(entries::remove);
+            // Files are named by partition ID, so as many files as partitions means every partition is covered
+            if (snapshotFiles == partitionCount) {
+                Set<ID> keys = new HashSet<>(entries.keySet());
+                keys.addAll(changed);
+                keys.removeAll(deleted);
+                restoredKeys = keys;
+            }
+        }
+        LOGGER.info("Restored {} entries from {}", entries.size(), mapDirectory);
+        return entries;
+    }
+
+    // Returns {snapshot time, partition count}
+    @SuppressWarnings("unchecked")
+    private long[] readSnapshot(Path file, Map<ID, T> entries) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try (ObjectInputStream in = new ObjectInputStream(new ByteBufferInputStream(buffer))) {
+                long snapshotTime = in.readLong();
+                int partitionCount = in.readInt();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    entries.put((ID) in.readObject(), (T) in.readObject());
+                }
+                return new long[] {snapshotTime, partitionCount};
+            } catch (ClassNotFoundException | EOFException e) {
+                throw new IOException("Corrupt snapshot " + file, e);
+            }
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+import java.util.Arrays;
+
+/**
+ * LocalCache over primitive long keys. Callers holding a long use the primitive methods, which do not box;
+ * the boxed LocalCache methods unbox and delegate, for callers that only have a Long.
+ */
+interface LongKeyedCache<V> extends LocalCache<Long, V> {
+
+    V get(long key);
+
+    void put(long key, V value);
+
+    V remove(long key);
+
+    @Override
+    default V get(Long key) {
+        return get(key.longValue());
+    }
+
+    @Override
+    default void put(Long key, V value) {
+        put(key.longValue(), value);
+    }
+
+    @Override
+    default V remove(Long key) {
+        return remove(key.longValue());
+    }
+}
+
+// Shared hashing for the long-keyed structures: murmur3 fmix64, so sequential personIds spread over the table.
+final class LongHashing {
+
+    private LongHashing() {
+    }
+
+    static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb93fe53e1a85L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    static int tableSize(int expectedSize) {
+        return Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+    }
+}
+
+/**
+ * Bounded LRU LocalCache for long keys without per-entry objects: entries live in fixed slot arrays linked into
+ * a recency list by int indexes, and an open-addressing table of slot numbers finds them. All memory is
+ * allocated up front, so get(long) and put(long, V) never allocate.
+ */
+class LongLruCache<V> implements LongKeyedCache<V> {
+
+    private static final int NONE = -1;
+
+    private final int maximumSize;
+    private final long[] slotKeys;
+    private final Object[] slotValues;
+    private final int[] newer;
+    private final int[] older;
+    // slot + 1 per table position, 0 = empty
+    private final int[] table;
+    private final int mask;
+    private int size;
+    private int newest = NONE;
+    private int oldest = NONE;
+
+    LongLruCache(int maximumSize) {
+        this.maximumSize = Math.max(1, maximumSize);
+        this.slotKeys = new long[this.maximumSize];
+        this.slotValues = new Object[this.maximumSize];
+        this.newer = new int[this.maximumSize];
+        this.older = new int[this.maximumSize];
+        this.table = new int[LongHashing.tableSize(this.maximumSize)];
+        this.mask = table.length - 1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized V get(long key) {
+        int slot = find(key);
+        if (slot == NONE) {
+            return null;
+        }
+        moveToNewest(slot);
+        return (V) slotValues[slot];
+    }
+
+    @Override
+    public synchronized void put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        int slot = find(key);
+        if (slot != NONE) {
+            slotValues[slot] = value;
+            moveToNewest(slot);
+            return;
+        }
+        if (size == maximumSize) {
+            // The evicted entry's slot is the one reused
+            slot = oldest;
+            unlink(slot);
+            removeFromTable(slotKeys[slot]);
+        } else {
+            slot = size++;
+        }
+        slotKeys[slot] = key;
+        slotValues[slot] = value;
+        linkAsNewest(slot);
+        int index = LongHashing.mix(key) & mask;
+        while (table[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        table[index] = slot + 1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized V remove(long key) {
+        int slot = removeFromTable(key);
+        if (slot == NONE) {
+            return null;
+        }
+        V value = (V) slotValues[slot];
+        unlink(slot);
+        // Keep slots dense: the last slot moves into the hole
+        int last = --size;
+        if (slot != last) {
+            moveSlot(last, slot);
+        }
+        slotValues[last] = null;
+        return value;
+    }
+
+    // Presence without touching recency
+    synchronized boolean containsKey(long key) {
+        return find(key) != NONE;
+    }
+
+    // Least recently used key; the cache must not be empty
+    synchronized long oldestKey() {
+        if (oldest == NONE) {
+            throw new IllegalStateException("Cache is empty");
+        }
+        return slotKeys[oldest];
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(slotValues, null);
+        size = 0;
+        newest = NONE;
+        oldest = NONE;
+    }
+
+    private int find(long key) {
+        for (int index = LongHashing.mix(key) & mask; table[index] != 0; index = (index + 1) & mask) {
+            int slot = table[index] - 1;
+            if (slotKeys[slot] == key) {
+                return slot;
+            }
+        }
+        return NONE;
+    }
+
+    // Removes the table position of key, backward-shifting its probe run; returns the slot it pointed at
+    private int removeFromTable(long key) {
+        int gap = LongHashing.mix(key) & mask;
+        while (table[gap] != 0 && slotKeys[table[gap] - 1] != key) {
+            gap = (gap + 1) & mask;
+        }
+        if (table[gap] == 0) {
+            return NONE;
+        }
+        int slot = table[gap] - 1;
+        int index = gap;
+        while (true) {
+            index = (index + 1) & mask;
+            if (table[index] == 0) {
+                break;
+            }
+            int home = LongHashing.mix(slotKeys[table[index] - 1]) & mask;
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                table[gap] = table[index];
+                gap = index;
+            }
+        }
+        table[gap] = 0;
+        return slot;
+    }
+
+    private void moveSlot(int from, int to) {
+        slotKeys[to] = slotKeys[from];
+        slotValues[to] = slotValues[from];
+        newer[to] = newer[from];
+        older[to] = older[from];
+        if (newer[to] != NONE) {
+            older[newer[to]] = to;
+        } else {
+            newest = to;
+        }
+        if (older[to] != NONE) {
+            newer[older[to]] = to;
+        } else {
+            oldest = to;
+        }
+        for (int index = LongHashing.mix(slotKeys[to]) & mask; ; index = (index + 1) & mask) {
+            if (table[index] == from + 1) {
+                table[index] = to + 1;
+                return;
+            }
+        }
+    }
+
+    private void moveToNewest(int slot) {
+        if (slot != newest) {
+            unlink(slot);
+            linkAsNewest(slot);
+        }
+    }
+
+    private void linkAsNewest(int slot) {
+        older[slot] = newest;
+        newer[slot] = NONE;
+        if (newest != NONE) {
+            newer[newest] = slot;
+        }
+        newest = slot;
+        if (oldest == NONE) {
+            oldest = slot;
+        }
+    }
+
+    private void unlink(int slot) {
+        if (older[slot] != NONE) {
+            newer[older[slot]] = newer[slot];
+        } else {
+            oldest = newer[slot];
+        }
+        if (newer[slot] != NONE) {
+            older[newer[slot]] = older[slot];
+        } else {
+            newest = older[slot];
+        }
+    }
+}
+
+/**
+ * W-TinyLFU over long keys with the same policy as WindowTinyLfuCache, built from three LongLruCache segments and
+ * a sketch fed with Long.hashCode, so get(long) and put(long, V) neither box nor allocate. Each segment is
+ * preallocated for its largest size; probation can grow to the whole main area, so about 1.8x maximumSize slots.
+ */
+class LongWindowTinyLfuCache<V> implements LongKeyedCache<V> {
+
+    private final int windowMaximum;
+    private final int protectedMaximum;
+    private final int mainMaximum;
+    private final LongLruCache<V> window;
+    private final LongLruCache<V> probation;
+    private final LongLruCache<V> protectedSegment;
+    private final FrequencySketch<Long> sketch;
+
+    LongWindowTinyLfuCache(int maximumSize) {
+        int maximum = Math.max(maximumSize, 2);
+        this.windowMaximum = Math.max(1, maximum / 100);
+        this.mainMaximum = maximum - windowMaximum;
+        this.protectedMaximum = Math.max(1, (int) (mainMaximum * 0.8));
+        this.window = new LongLruCache<>(windowMaximum);
+        this.probation = new LongLruCache<>(mainMaximum);
+        this.protectedSegment = new LongLruCache<>(protectedMaximum);
+        this.sketch = new FrequencySketch<>(maximum);
+    }
+
+    @Override
+    public synchronized V get(long key) {
+        sketch.incrementHash(Long.hashCode(key));
+        V value = window.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = protectedSegment.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = probation.remove(key);
+        if (value != null) {
+            promote(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized void put(long key, V value) {
+        sketch.incrementHash(Long.hashCode(key));
+        if (window.containsKey(key)) {
+            window.put(key, value);
+        } else if (protectedSegment.containsKey(key)) {
+            protectedSegment.put(key, value);
+        } else if (probation.remove(key) != null) {
+            promote(key, value);
+        } else if (window.size() < windowMaximum) {
+            window.put(key, value);
+        } else {
+            // Segments must never evict on their own, so the window's eldest leaves before the new key enters
+            long candidateKey = window.oldestKey();
+            V candidateValue = window.remove(candidateKey);
+            window.put(key, value);
+            admit(candidateKey, candidateValue);
+        }
+    }
+
+    @Override
+    public synchronized V remove(long key) {
+        V value = window.remove(key);
+        if (value == null) {
+            value = probation.remove(key);
+        }
+        if (value == null) {
+            value = protectedSegment.remove(key);
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    private void promote(long key, V value) {
+        if (protectedSegment.size() == protectedMaximum) {
+            long demotedKey = protectedSegment.oldestKey();
+            probation.put(demotedKey, protectedSegment.remove(demotedKey));
+        }
+        protectedSegment.put(key, value);
+    }
+
+    private void admit(long candidateKey, V candidateValue) {
+        if (probation.size() + protectedSegment.size() < mainMaximum) {
+            probation.put(candidateKey, candidateValue);
+            return;
+        }
+        LongLruCache<V> victimSegment = probation.size() == 0 ? protectedSegment : probation;
+        long victimKey = victimSegment.oldestKey();
+        if (sketch.frequencyOfHash(Long.hashCode(candidateKey)) > sketch.frequencyOfHash(Long.hashCode(victimKey))) {
+            victimSegment.remove(victimKey);
+            probation.put(candidateKey, candidateValue);
+        }
+    }
+}
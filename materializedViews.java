@@ -0,0 +1,108 @@
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.IndexConfig;
+import com.hazelcast.config.IndexType;
+import com.hazelcast.config.PredicateConfig;
+import com.hazelcast.config.QueryCacheConfig;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.QueryCache;
+import com.hazelcast.map.listener.EventLostListener;
+import com.hazelcast.query.Predicates;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * A locally held, continuously maintained subset of an entity map, e.g. all skills named X or all addresses in
+ * city Y. Built on Hazelcast's continuous query cache: on creation every member scans its partitions in
+ * parallel to seed the view, after which changes matching the QueryKey arrive as batched events.
+ *
+ * <p>Reads (get, iteration, attribute lookups) are answered from the local copy without network calls; values
+ * are held deserialized and lookups on the attributes named at construction use local hash indexes.
+ *
+ * <p>If events are lost, e.g. when a member leaves before its batch is published, the view would silently miss
+ * those changes; a lost-event listener repopulates it from the map instead. A failed recovery is logged and
+ * retried on the next lost event, or by calling {@link #recover()}.
+ */
+class MaterializedView<K, V> implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MaterializedView.class);
+
+    private final QueryCache<K, V> view;
+
+    MaterializedView(IMap<K, V> map, String viewName, QueryKey query, String... indexedAttributes) {
+        this.view = map.getQueryCache(viewName, query.toPredicate(), true);
+        for (String attribute : indexedAttributes) {
+            view.addIndex(new IndexConfig(IndexType.HASH, attribute));
+        }
+        view.addEntryListener((EventLostListener) event -> {
+            if (!recover()) {
+                LOGGER.warn("View {} lost events of partition {} and could not be recovered", viewName,
+                        event.getPartitionId());
+            }
+        }, false);
+    }
+
+    /**
+     * Event batching for a view; add it to the entity map's MapConfig under the same view name. Without it
+     * Hazelcast publishes every change on its own.
+     */
+    static QueryCacheConfig viewConfig(String viewName, QueryKey query, int batchSize, int delaySeconds,
+                                       String... indexedAttributes) {
+        QueryCacheConfig config = new QueryCacheConfig(viewName)
+                .setPredicateConfig(new PredicateConfig(query.toPredicate()))
+                .setPopulate(true)
+                .setIncludeValue(true)
+                .setInMemoryFormat(InMemoryFormat.OBJECT)
+                .setBatchSize(batchSize)
+                .setDelaySeconds(delaySeconds)
+                // Only the latest change per key within a batch is sent
+                .setCoalesce(true);
+        for (String attribute : indexedAttributes) {
+            config.addIndexConfig(new IndexConfig(IndexType.HASH, attribute));
+        }
+        return config;
+    }
+
+    V get(K key) {
+        return view.get(key);
+    }
+
+    Map<K, V> getAll(Set<K> keys) {
+        return view.getAll(keys);
+    }
+
+    boolean containsKey(K key) {
+        return view.containsKey(key);
+    }
+
+    Collection<V> values() {
+        return view.values();
+    }
+
+    void forEach(BiConsumer<K, V> action) {
+        view.entrySet().forEach(entry -> action.accept(entry.getKey(), entry.getValue()));
+    }
+
+    // Narrows the view further, e.g. persons in city Y with a given name; runs on the local copy only
+    Collection<V> lookup(String attribute, Comparable<?> value) {
+        return view.values(Predicates.equal(attribute, value));
+    }
+
+    int size() {
+        return view.size();
+    }
+
+    // After the event stream was interrupted (e.g. a member left), repopulates from the map; false if that failed
+    boolean recover() {
+        return view.tryRecover();
+    }
+
+    @Override
+    public void close() {
+        view.destroy();
+    }
+}
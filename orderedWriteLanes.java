@@ -0,0 +1,441 @@
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.MapLoaderLifecycleSupport;
+import com.hazelcast.map.MapStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind scheduler that shards writes by key hash into independent lanes. Each lane has its own FIFO
+ * queue and thread, so every update to a key is written in order, while different lanes flush to the database
+ * concurrently and a slow batch only holds up its own lane. Stores go through a PoisonIsolatingMapStore, so
+ * entities the database rejects end up in {@code deadLetters} instead of stalling the lane. A failed batch is
+ * retried in place with backoff, which keeps the lane's order intact: indefinitely while the failure is transient
+ * (e.g. the database is down), otherwise {@value #MAX_ATTEMPTS} times before the batch is dead-lettered.
+ *
+ * <p>With a {@link WriteBackpressure} the lanes are bounded by its watermarks and overload policy. A spilled
+ * write keeps only its position in the spill file in memory; loads of its key read the value back from there.
+ * Writes still in the spill file from a previous run are indexed on start and written before new ones.
+ *
+ * <p>The lanes are the map's write-behind queue, so the map must be configured write-through
+ * ({@code writeDelaySeconds = 0}); {@link #init} refuses a write-behind config, whose own queue would sit unbounded
+ * in front of the lanes and whose single flush thread BLOCK and WRITE_THROUGH would stall. With write-through,
+ * store() runs on the partition thread of the key: under BLOCK and WRITE_THROUGH an overloaded put holds up its
+ * partition for at most {@code maxBlockMillis}, which must stay well below the operation call timeout.
+ * SPILL_TO_DISK never blocks.
+ */
+class OrderedLaneMapStore<ID, T> implements MapStore<ID, T>, MapLoaderLifecycleSupport, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderedLaneMapStore.class);
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final MapStore<ID, T> delegate;
+    private final MapStore<ID, T> writer;
+    private final IMap<String, DeadLetterEntry> deadLetters;
+    private final String mapName;
+    private final int maxBatchSize;
+    private final List<Lane> lanes = new ArrayList<>();
+    private final WriteBackpressure backpressure;
+    private final SpillFile spillFile;
+    private final AtomicLong sequence = new AtomicLong();
+    // Latest accepted write per key until it reaches the database, so loads never see an older row
+    private final ConcurrentMap<ID, PendingWrite<ID, T>> unwritten = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    OrderedLaneMapStore(MapStore<ID, T> delegate, String mapName, int laneCount, int maxBatchSize,
+                        IMap<String, DeadLetterEntry> deadLetters) {
+        this(delegate, mapName, laneCount, maxBatchSize, deadLetters, null, null);
+    }
+
+    OrderedLaneMapStore(MapStore<ID, T> delegate, String mapName, int laneCount, int maxBatchSize,
+                        IMap<String, DeadLetterEntry> deadLetters, WriteBackpressure backpressure,
+                        SpillFile spillFile) {
+        if (backpressure != null && backpressure.getPolicy() == OverloadPolicy.SPILL_TO_DISK && spillFile == null) {
+            throw new IllegalArgumentException("SPILL_TO_DISK needs a spill file for map " + mapName);
+        }
+        if (spillFile != null && backpressure == null) {
+            throw new IllegalArgumentException("A spill file needs a WriteBackpressure to refill from it for map "
+                    + mapName);
+        }
+        this.backpressure = backpressure;
+        this.spillFile = spillFile;
+        this.delegate = delegate;
+        this.writer = new PoisonIsolatingMapStore<>(delegate, mapName, deadLetters, 3, 100);
+        this.deadLetters = deadLetters;
+        this.mapName = mapName;
+        this.maxBatchSize = maxBatchSize;
+        if (spillFile != null) {
+            indexSpilled();
+        }
+        for (int i = 0; i < laneCount; i++) {
+            Lane lane = new Lane();
+            Thread thread = new Thread(lane, "write-lane-" + mapName + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            lanes.add(lane);
+        }
+    }
+
+    @Override
+    public void store(ID key, T value) {
+        enqueue(new PendingWrite<>(sequence.incrementAndGet(), key, value));
+    }
+
+    @Override
+    public void storeAll(Map<ID, T> map) {
+        map.forEach(this::store);
+    }
+
+    @Override
+    public void delete(ID key) {
+        enqueue(new PendingWrite<>(sequence.incrementAndGet(), key, null));
+    }
+
+    @Override
+    public void deleteAll(Collection<ID> keys) {
+        keys.forEach(this::delete);
+    }
+
+    @Override
+    public T load(ID key) {
+        PendingWrite<ID, T> pending = unwritten.get(key);
+        return pending != null ? valueOf(pending) : delegate.load(key);
+    }
+
+    @Override
+    public Map<ID, T> loadAll(Collection<ID> keys) {
+        List<ID> missing = new ArrayList<>(keys.size());
+        Map<ID, T> loaded = new HashMap<>();
+        for (ID key : keys) {
+            PendingWrite<ID, T> pending = unwritten.get(key);
+            if (pending == null) {
+                missing.add(key);
+            } else {
+                T value = valueOf(pending);
+                if (value != null) {
+                    loaded.put(key, value);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            loaded.putAll(delegate.loadAll(missing));
+        }
+        return loaded;
+    }
+
+    @Override
+    public Iterable<ID> loadAllKeys() {
+        return delegate.loadAllKeys();
+    }
+
+    int pendingWrites() {
+        return lanes.stream().mapToInt(lane -> lane.queue.size()).sum();
+    }
+
+    @Override
+    public void init(HazelcastInstance hazelcastInstance, Properties properties, String mapName) {
+        MapConfig mapConfig = hazelcastInstance.getConfig().findMapConfig(mapName);
+        if (mapConfig.getMapStoreConfig().getWriteDelaySeconds() > 0) {
+            throw new IllegalStateException("Map " + mapName + " must be write-through (writeDelaySeconds 0): "
+                    + "OrderedLaneMapStore does the write-behind itself");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        close();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+    }
+
+    private void enqueue(PendingWrite<ID, T> write) {
+        unwritten.put(write.key, write);
+        if (backpressure == null) {
+            addToLane(write);
+            return;
+        }
+        switch (backpressure.getPolicy()) {
+            case BLOCK:
+                if (backpressure.isOverloaded()) {
+                    backpressure.recordBlocked();
+                    awaitCapacity();
+                }
+                addToLane(write);
+                break;
+            case WRITE_THROUGH:
+                if (backpressure.isOverloaded()) {
+                    backpressure.recordWriteThrough();
+                    write.written = new CompletableFuture<>();
+                    addToLane(write);
+                    awaitWritten(write);
+                } else {
+                    addToLane(write);
+                }
+                break;
+            case SPILL_TO_DISK:
+                // While anything is spilled, new writes queue behind it so per-key order holds
+                synchronized (spillFile) {
+                    if (backpressure.isOverloaded() || !spillFile.isEmpty()) {
+                        long position = spillFile.append(write);
+                        // Only the position stays in memory; a newer write to the key may already have replaced it
+                        unwritten.replace(write.key, write, PendingWrite.spilled(write, position));
+                        backpressure.recordSpilled();
+                    } else {
+                        addToLane(write);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown overload policy " + backpressure.getPolicy());
+        }
+    }
+
+    private void addToLane(PendingWrite<ID, T> write) {
+        if (backpressure != null) {
+            backpressure.added(1);
+        }
+        laneOf(write.key).queue.add(write);
+    }
+
+    private void awaitCapacity() {
+        try {
+            backpressure.awaitCapacity();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitWritten(PendingWrite<ID, T> write) {
+        try {
+            write.written.get(backpressure.getMaxBlockMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Write-through of {} on {} not confirmed after {} ms, leaving it queued", write.key, mapName,
+                    backpressure.getMaxBlockMillis());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Write-through of " + write.key + " on " + mapName + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void refillFromSpill() {
+        if (spillFile == null || !backpressure.belowLowWatermark()) {
+            return;
+        }
+        synchronized (spillFile) {
+            while (!spillFile.isEmpty() && backpressure.belowLowWatermark()) {
+                List<PendingWrite<ID, T>> spilled = spillFile.poll(maxBatchSize);
+                for (PendingWrite<ID, T> write : spilled) {
+                    // Positions are invalid once the file is truncated, so the marker gives way to the value
+                    unwritten.replace(write.key, write, write);
+                    addToLane(write);
+                }
+            }
+        }
+    }
+
+    private T valueOf(PendingWrite<ID, T> pending) {
+        if (pending.spillPosition < 0) {
+            return pending.value;
+        }
+        synchronized (spillFile) {
+            // Refill may have polled the record meanwhile; the current entry then holds the value
+            PendingWrite<ID, T> current = unwritten.get(pending.key);
+            if (current == null) {
+                return delegate.load(pending.key);
+            }
+            if (current.spillPosition < 0) {
+                return current.value;
+            }
+            PendingWrite<ID, T> spilled = spillFile.read(current.spillPosition);
+            if (spilled == null || !spilled.equals(current)) {
+                // The record was unreadable and skipped, so the write is lost; the database has the previous row
+                return delegate.load(pending.key);
+            }
+            return spilled.value;
+        }
+    }
+
+    // Writes spilled before a restart are replayed in file order; loads must see them until they are written
+    private void indexSpilled() {
+        spillFile.<PendingWrite<ID, T>>forEach((position, write) -> {
+            unwritten.put(write.key, PendingWrite.spilled(write, position));
+            sequence.accumulateAndGet(write.sequence, Math::max);
+        });
+    }
+
+    private Lane laneOf(ID key) {
+        int hash = key.hashCode();
+        return lanes.get(Math.floorMod(hash ^ (hash >>> 16), lanes.size()));
+    }
+
+    // Identified by sequence so a copy read back from the spill file still matches its entry in unwritten
+    private static final class PendingWrite<ID, T> implements Serializable {
+
+        private final long sequence;
+        private final ID key;
+        private final T value;
+        // Position in the spill file of the record holding the value, or -1 if the value is held here
+        private final long spillPosition;
+        private transient CompletableFuture<Void> written;
+
+        private PendingWrite(long sequence, ID key, T value) {
+            this(sequence, key, value, -1);
+        }
+
+        private PendingWrite(long sequence, ID key, T value, long spillPosition) {
+            this.sequence = sequence;
+            this.key = key;
+            this.value = value;
+            this.spillPosition = spillPosition;
+        }
+
+        static <ID, T> PendingWrite<ID, T> spilled(PendingWrite<ID, T> write, long position) {
+            return new PendingWrite<>(write.sequence, write.key, null, position);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof PendingWrite && ((PendingWrite<?, ?>) other).sequence == sequence;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(sequence);
+        }
+    }
+
+    private final class Lane implements Runnable {
+
+        private final BlockingQueue<PendingWrite<ID, T>> queue = new LinkedBlockingQueue<>();
+
+        @Override
+        public void run() {
+            List<PendingWrite<ID, T>> batch = new ArrayList<>(maxBatchSize);
+            // Drain what is left on close so nothing accepted is dropped
+            while (running || !queue.isEmpty()) {
+                try {
+                    PendingWrite<ID, T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        refillFromSpill();
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatchSize - 1);
+                    RuntimeException deadLettered = writeWithRetry(batch);
+                    for (PendingWrite<ID, T> write : batch) {
+                        unwritten.remove(write.key, write);
+                        if (write.written != null && deadLettered != null) {
+                            write.written.completeExceptionally(deadLettered);
+                        } else if (write.written != null) {
+                            write.written.complete(null);
+                        }
+                    }
+                    if (backpressure != null) {
+                        backpressure.written(batch.size());
+                        refillFromSpill();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RuntimeException e) {
+                    // E.g. an unreadable spill file; the lane must outlive it, or its writes pile up unnoticed
+                    LOGGER.error("Write lane on {} failed, continuing", mapName, e);
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(1_000);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        // Returns the error the batch was dead-lettered for, or null once it is written
+        private RuntimeException writeWithRetry(List<PendingWrite<ID, T>> batch) throws InterruptedException {
+            Map<ID, T> latest = latest(batch);
+            long backoff = 100;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    write(latest);
+                    return null;
+                } catch (RuntimeException e) {
+                    if (!PoisonIsolatingMapStore.isTransient(e) && attempt >= MAX_ATTEMPTS
+                            && deadLetterQuietly(latest, e)) {
+                        return e;
+                    }
+                    LOGGER.warn("Write lane batch of {} on {} failed, retrying in {} ms", batch.size(), mapName, backoff, e);
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+                }
+            }
+        }
+
+        private boolean deadLetterQuietly(Map<ID, T> latest, RuntimeException error) {
+            try {
+                LOGGER.error("Write lane batch of {} on {} failed {} times, moving it to dead letters", latest.size(),
+                        mapName, MAX_ATTEMPTS, error);
+                long now = System.currentTimeMillis();
+                latest.forEach((key, value) -> deadLetters.set(mapName + ":" + key,
+                        new DeadLetterEntry(mapName, key, value, String.valueOf(error.getMessage()), now)));
+                return true;
+            } catch (RuntimeException e) {
+                LOGGER.error("Dead-lettering a write lane batch on {} failed, retrying the batch", mapName, e);
+                return false;
+            }
+        }
+
+        // All writes for a key are in this lane, so applying the last write per key gives the same final state
+        private Map<ID, T> latest(List<PendingWrite<ID, T>> batch) {
+            Map<ID, T> latest = new LinkedHashMap<>();
+            for (PendingWrite<ID, T> write : batch) {
+                latest.remove(write.key);
+                latest.put(write.key, write.value);
+            }
+            return latest;
+        }
+
+        private void write(Map<ID, T> latest) {
+            Map<ID, T> stores = new LinkedHashMap<>();
+            List<ID> deletes = new ArrayList<>();
+            latest.forEach((key, value) -> {
+                if (value == null) {
+                    deletes.add(key);
+                } else {
+                    stores.put(key, value);
+                }
+            });
+            if (!stores.isEmpty()) {
+                writer.storeAll(stores);
+            }
+            if (!deletes.isEmpty()) {
+                writer.deleteAll(deletes);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import com.hazelcast.core.HazelcastInstance;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+@Service
+class PersonAggregateService {
+
+    // persons -> address, skills; both child maps are keyed by personId
+    static final AggregateDefinition<PersonAggregate> PERSON_AGGREGATE = new AggregateDefinition<>(
+            AggregateNode.root("persons")
+                    .join(AggregateNode.sharedKey("address", "addresses"))
+                    .join(AggregateNode.sharedKey("skills", "skills")),
+            root -> new PersonAggregate(root.value(), root.one("address"), root.one("skills")));
+
+    private final HotKeyReplicatedMap<Long, Person> personCache;
+    private final HotKeyReplicatedMap<Long, Address> addressCache;
+    private final HotKeyReplicatedMap<Long, List<Skill>> skillsCache;
+    private final LongKeyedCache<PersonAggregate> aggregateCache;
+    private final AggregateResolver aggregateResolver;
+    private final AccessProfile accessProfile = new AccessProfile(0.8, 1_000);
+    // Bumped per personId stripe on invalidation, so a lazy aggregate completing afterwards is not cached
+    private final AtomicLongArray invalidations = new AtomicLongArray(64);
+
+    PersonAggregateService(HazelcastInstance hazelcastInstance,
+                           @Value("${cache.aggregate.eviction:TINY_LFU}") CacheEvictionMode evictionMode,
+                           @Value("${cache.aggregate.size:10000}") int aggregateCacheSize,
+                           @Value("${cache.hotkeys.share:0.01}") double hotKeyShare) {
+        // Aggregate reads hit all three maps with the same personId, so a celebrity is hot in each of them
+        this.personCache = new HotKeyReplicatedMap<>(hazelcastInstance, "persons", 32, hotKeyShare, 1_000, 30_000);
+        this.addressCache = new HotKeyReplicatedMap<>(hazelcastInstance, "addresses", 32, hotKeyShare, 1_000, 30_000);
+        this.skillsCache = new HotKeyReplicatedMap<>(hazelcastInstance, "skills", 32, hotKeyShare, 1_000, 30_000);
+        this.aggregateCache = LocalCache.createLongKeyed(evictionMode, aggregateCacheSize);
+        this.aggregateResolver = new AggregateResolver(hazelcastInstance,
+                Map.of("persons", personCache, "addresses", addressCache, "skills", skillsCache));
+    }
+
+    public PersonAggregate getPersonAggregate(Long personId) {
+        long id = personId.longValue();
+        PersonAggregate aggregate = aggregateCache.get(id);
+        if (aggregate == null) {
+            long generation = invalidations.get(stripe(id));
+            aggregate = buildAggregate(personId);
+            cacheIfNotInvalidated(id, generation, aggregate);
+        }
+        return aggregate;
+    }
+
+    /**
+     * For callers that often need only part of the aggregate: a cached aggregate is served as is, otherwise each
+     * part is read on first use. Once all parts are loaded the full aggregate is cached, unless the personId was
+     * invalidated meanwhile.
+     */
+    public LazyPersonAggregate getLazyPersonAggregate(Long personId) {
+        long id = personId.longValue();
+        PersonAggregate cached = aggregateCache.get(id);
+        if (cached != null) {
+            return new LazyPersonAggregate(() -> CompletableFuture.completedFuture(cached.getPerson()),
+                    () -> CompletableFuture.completedFuture(cached.getAddress()),
+                    () -> CompletableFuture.completedFuture(cached.getSkills()), accessProfile, aggregate -> { });
+        }
+        long generation = invalidations.get(stripe(id));
+        return new LazyPersonAggregate(() -> personCache.getAsync(personId),
+                () -> addressCache.getAsync(personId), () -> skillsCache.getAsync(personId), accessProfile,
+                aggregate -> cacheIfNotInvalidated(id, generation, aggregate));
+    }
+
+    // Batch variant: the misses cost one getAll per map, not three gets per person; unknown personIds are left out
+    public Map<Long, PersonAggregate> getPersonAggregates(Collection<Long> personIds) {
+        Map<Long, PersonAggregate> aggregates = new LinkedHashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long personId : personIds) {
+            PersonAggregate aggregate = aggregateCache.get(personId.longValue());
+            if (aggregate != null) {
+                aggregates.put(personId, aggregate);
+            } else {
+                misses.add(personId);
+            }
+        }
+        if (!misses.isEmpty()) {
+            Map<Long, Long> generations = new HashMap<>();
+            misses.forEach(personId -> generations.put(personId, invalidations.get(stripe(personId.longValue()))));
+            Map<Long, PersonAggregate> resolved = aggregateResolver.resolve(PERSON_AGGREGATE, misses);
+            resolved.forEach((personId, aggregate) ->
+                    cacheIfNotInvalidated(personId.longValue(), generations.get(personId), aggregate));
+            aggregates.putAll(resolved);
+        }
+        return aggregates;
+    }
+
+    public void invalidate(Long personId) {
+        long id = personId.longValue();
+        invalidations.incrementAndGet(stripe(id));
+        aggregateCache.remove(id);
+    }
+
+    // afterApply hook for ChangeDataCaptureIngestor; persons, addresses and skills are all keyed by personId
+    public void onChange(ChangeEvent event) {
+        if (event.getKey() instanceof Long) {
+            invalidate((Long) event.getKey());
+        }
+    }
+
+    private PersonAggregate buildAggregate(Long personId) {
+        TinyLfuEvictionComparator.recordAccess("persons", personId);
+        TinyLfuEvictionComparator.recordAccess("addresses", personId);
+        TinyLfuEvictionComparator.recordAccess("skills", personId);
+
+        // The maps are read-through (GenericMapStore), so a miss here loads from the database; hot personIds
+        // are read from the local replicated copy instead
+        Person person = personCache.get(personId);
+        Address address = addressCache.get(personId);
+        List<Skill> skills = skillsCache.get(personId);
+
+        return new PersonAggregate(person, address, skills);
+    }
+
+    // An invalidation that ran while the aggregate was being built may have removed an older copy only. One that
+    // runs between the check and the put is caught by the second check, which drops what was just put.
+    private void cacheIfNotInvalidated(long personId, long generation, PersonAggregate aggregate) {
+        int stripe = stripe(personId);
+        if (invalidations.get(stripe) == generation) {
+            aggregateCache.put(personId, aggregate);
+            if (invalidations.get(stripe) != generation) {
+                aggregateCache.remove(personId);
+            }
+        }
+    }
+
+    private int stripe(long personId) {
+        return LongHashing.mix(personId) & (invalidations.length() - 1);
+    }
+}
@@ -0,0 +1,43 @@
+import com.hazelcast.core.HazelcastInstance;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+
+@Service
+class PersonService {
+
+    private final PersonRepository personRepository;
+    private final HazelcastInstance hazelcastInstance;
+    private final SingleFlight<Long, Person> personLoads = new SingleFlight<>();
+
+    PersonService(PersonRepository personRepository, HazelcastInstance hazelcastInstance) {
+        this.personRepository = personRepository;
+        this.hazelcastInstance = hazelcastInstance;
+    }
+
+    // sync = true serializes misses per cache entry; SingleFlight also covers callers that bypass the proxy
+    @Cacheable(value = "persons", key = "#id", sync = true)
+    public Person getPersonById(Long id) {
+        return personLoads.load(id, key -> personRepository.findById(key).orElse(null));
+    }
+
+    // persons is read-through, so one getAll loads the misses with a single MapStore.loadAll
+    public Map<Long, Person> getPersonsByIds(Collection<Long> ids) {
+        return hazelcastInstance.<Long, Person>getMap("persons").getAll(new HashSet<>(ids));
+    }
+
+    @CachePut(value = "persons", key = "#person.id")
+    public Person savePerson(Person person) {
+        return personRepository.save(person);
+    }
+
+    @CacheEvict(value = "persons", key = "#id")
+    public void deletePerson(Long id) {
+        personRepository.deleteById(id);
+    }
+}
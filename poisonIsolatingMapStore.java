@@ -0,0 +1,206 @@
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.MapStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.dao.TypeMismatchDataAccessException;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// A write that was rejected by the database, parked with its error for inspection and replay.
+final class DeadLetterEntry implements Serializable {
+
+    private final String mapName;
+    private final Object key;
+    private final Object value;
+    private final String error;
+    private final long failedAt;
+
+    DeadLetterEntry(String mapName, Object key, Object value, String error, long failedAt) {
+        this.mapName = mapName;
+        this.key = key;
+        this.value = value;
+        this.error = error;
+        this.failedAt = failedAt;
+    }
+
+    String getMapName() {
+        return mapName;
+    }
+
+    Object getKey() {
+        return key;
+    }
+
+    Object getValue() {
+        return value;
+    }
+
+    String getError() {
+        return error;
+    }
+
+    long getFailedAt() {
+        return failedAt;
+    }
+}
+
+/**
+ * Keeps one bad entity from stalling a map's write-behind. Transient failures (timeouts, deadlocks, and resource
+ * failures such as no connection or no transaction) are retried with exponential backoff and then rethrown so
+ * Hazelcast retries later. Only data errors (constraint violations, type mismatches) bisect the batch until the
+ * rejected entries are isolated; those go to the dead-letter map and everything else is stored. Any other
+ * failure is rethrown as is. If every entry of a batch fails on its own, nothing is dead-lettered.
+ */
+class PoisonIsolatingMapStore<ID, T> implements MapStore<ID, T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PoisonIsolatingMapStore.class);
+
+    private final MapStore<ID, T> delegate;
+    private final String mapName;
+    private final IMap<String, DeadLetterEntry> deadLetters;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+
+    PoisonIsolatingMapStore(MapStore<ID, T> delegate, String mapName, IMap<String, DeadLetterEntry> deadLetters,
+                            int maxAttempts, long initialBackoffMillis) {
+        this.delegate = delegate;
+        this.mapName = mapName;
+        this.deadLetters = deadLetters;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    @Override
+    public void store(ID key, T value) {
+        storeAll(new LinkedHashMap<>(Map.of(key, value)));
+    }
+
+    @Override
+    public void storeAll(Map<ID, T> map) {
+        List<Map.Entry<ID, T>> entries = new ArrayList<>(map.size());
+        map.forEach((key, value) -> entries.add(Map.entry(key, value)));
+        try {
+            storeWithRetry(entries);
+            return;
+        } catch (RuntimeException e) {
+            if (!isDataError(e)) {
+                throw e;
+            }
+            LOGGER.warn("storeAll of {} entries on {} rejected, isolating bad entries", entries.size(), mapName, e);
+        }
+        Map<Map.Entry<ID, T>, RuntimeException> rejected = new LinkedHashMap<>();
+        isolate(entries, rejected);
+        if (rejected.size() == entries.size() && entries.size() > 1) {
+            throw new IllegalStateException("Every entry of a " + entries.size() + " entry batch on " + mapName
+                    + " was rejected; not dead-lettering", rejected.values().iterator().next());
+        }
+        rejected.forEach(this::deadLetter);
+        // Everything was either stored or dead-lettered; tell Hazelcast there is nothing left to retry
+        removeAll(map, entries);
+    }
+
+    @Override
+    public void delete(ID key) {
+        delegate.delete(key);
+    }
+
+    @Override
+    public void deleteAll(Collection<ID> keys) {
+        delegate.deleteAll(keys);
+    }
+
+    @Override
+    public T load(ID key) {
+        return delegate.load(key);
+    }
+
+    @Override
+    public Map<ID, T> loadAll(Collection<ID> keys) {
+        return delegate.loadAll(keys);
+    }
+
+    @Override
+    public Iterable<ID> loadAllKeys() {
+        return delegate.loadAllKeys();
+    }
+
+    private void isolate(List<Map.Entry<ID, T>> entries, Map<Map.Entry<ID, T>, RuntimeException> rejected) {
+        try {
+            storeWithRetry(entries);
+        } catch (RuntimeException e) {
+            if (!isDataError(e)) {
+                throw e;
+            }
+            if (entries.size() == 1) {
+                rejected.put(entries.get(0), e);
+                return;
+            }
+            int middle = entries.size() / 2;
+            isolate(entries.subList(0, middle), rejected);
+            isolate(entries.subList(middle, entries.size()), rejected);
+        }
+    }
+
+    private void storeWithRetry(List<Map.Entry<ID, T>> entries) {
+        Map<ID, T> batch = new LinkedHashMap<>();
+        entries.forEach(entry -> batch.put(entry.getKey(), entry.getValue()));
+        long backoff = initialBackoffMillis;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                delegate.storeAll(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (!isTransient(e) || attempt >= maxAttempts) {
+                    throw e;
+                }
+                sleep(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+
+    private void deadLetter(Map.Entry<ID, T> entry, RuntimeException error) {
+        LOGGER.error("Entry {} of {} rejected by the database, moved to dead letters", entry.getKey(), mapName, error);
+        deadLetters.set(mapName + ":" + entry.getKey(), new DeadLetterEntry(mapName, entry.getKey(), entry.getValue(),
+                String.valueOf(error.getMessage()), System.currentTimeMillis()));
+    }
+
+    // Spring files resource failures (e.g. CannotGetJdbcConnectionException) as non-transient; they are not about data
+    static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof NonTransientDataAccessResourceException || e instanceof CannotCreateTransactionException;
+    }
+
+    // Failures caused by the rows themselves, which retrying the same batch cannot fix
+    private static boolean isDataError(RuntimeException e) {
+        return e instanceof DataIntegrityViolationException || e instanceof TypeMismatchDataAccessException;
+    }
+
+    private static <ID, T> void removeAll(Map<ID, T> map, List<Map.Entry<ID, T>> entries) {
+        try {
+            entries.forEach(entry -> map.remove(entry.getKey()));
+        } catch (UnsupportedOperationException e) {
+            // Caller passed an immutable map; it is not going to retry from it either
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backing off", e);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.MapEvent;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
+import com.hazelcast.map.listener.MapEvictedListener;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * A conjunction of attribute equality / IN conditions in normal form: attributes are sorted and repeated
+ * conditions on one attribute are intersected, so {@code personId = 1 AND city = 'X'} and
+ * {@code city = 'X' AND personId = 1} are the same key.
+ *
+ * <p>Values are compared the way Hazelcast compares them, not by Java equality: query values and attribute values
+ * are both {@link #normalize normalised}, so {@code where("personId", 1)} matches a Long attribute and
+ * {@code where("status", "ACTIVE")} an enum one.
+ */
+final class QueryKey {
+
+    private final TreeMap<String, Set<Object>> conditions;
+
+    private QueryKey(TreeMap<String, Set<Object>> conditions) {
+        this.conditions = conditions;
+    }
+
+    static QueryKey where(String attribute, Comparable<?> value) {
+        return new QueryKey(new TreeMap<>()).and(attribute, value);
+    }
+
+    static QueryKey whereIn(String attribute, Comparable<?>... values) {
+        return new QueryKey(new TreeMap<>()).andIn(attribute, values);
+    }
+
+    QueryKey and(String attribute, Comparable<?> value) {
+        return andIn(attribute, value);
+    }
+
+    QueryKey andIn(String attribute, Comparable<?>... values) {
+        TreeMap<String, Set<Object>> combined = new TreeMap<>(conditions);
+        Set<Object> allowed = new HashSet<>(values.length * 2);
+        for (Comparable<?> value : values) {
+            allowed.add(normalize(value));
+        }
+        combined.merge(attribute, allowed, (existing, added) -> {
+            Set<Object> intersection = new HashSet<>(existing);
+            intersection.retainAll(added);
+            return intersection;
+        });
+        return new QueryKey(combined);
+    }
+
+    Set<String> attributes() {
+        return conditions.keySet();
+    }
+
+    Set<Object> allowedValues(String attribute) {
+        return conditions.get(attribute);
+    }
+
+    boolean matches(Function<String, Object> attributeValue) {
+        for (Map.Entry<String, Set<Object>> condition : conditions.entrySet()) {
+            if (!condition.getValue().contains(normalize(attributeValue.apply(condition.getKey())))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Integral numbers (and whole floating-point ones) become Long, other floating-point numbers Double, enums their name
+    static Object normalize(Object value) {
+        if (value instanceof Long) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof BigInteger) {
+            BigInteger integer = (BigInteger) value;
+            return integer.bitLength() < Long.SIZE ? (Object) integer.longValue() : integer;
+        }
+        if (value instanceof BigDecimal) {
+            BigDecimal decimal = ((BigDecimal) value).stripTrailingZeros();
+            if (decimal.scale() <= 0 && decimal.precision() - decimal.scale() < 19) {
+                return decimal.longValueExact();
+            }
+            return decimal.doubleValue();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            long integral = (long) number;
+            return integral == number && Math.abs(number) < 0x1p63 ? (Object) integral : (Object) number;
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        return value;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    <K, V> Predicate<K, V> toPredicate() {
+        List<Predicate> predicates = new ArrayList<>(conditions.size());
+        conditions.forEach((attribute, values) -> predicates.add(values.size() == 1
+                ? Predicates.equal(attribute, (Comparable) values.iterator().next())
+                : Predicates.in(attribute, values.toArray(new Comparable[0]))));
+        return predicates.size() == 1 ? predicates.get(0) : Predicates.and(predicates.toArray(new Predicate[0]));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof QueryKey && conditions.equals(((QueryKey) o).conditions);
+    }
+
+    @Override
+    public int hashCode() {
+        return conditions.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return conditions.toString();
+    }
+}
+
+/**
+ * Caches {@code values(predicate)} results of one IMap by normalised QueryKey. A map listener invalidates only
+ * the queries the changed entry matched before or after the change; to find those without evaluating every
+ * cached query, queries are indexed by the allowed values of their first attribute.
+ *
+ * <p>Every attribute used in a query needs an extractor, since the listener evaluates the conditions locally;
+ * {@code __key} is always available. A query's result is not cached if a change it matches arrived while it ran.
+ */
+class PredicateResultCache<K, V> implements AutoCloseable {
+
+    private static final String KEY_ATTRIBUTE = "__key";
+
+    private final IMap<K, V> map;
+    private final Map<String, Function<V, Object>> extractors;
+    private final int maxEntries;
+    private final LinkedHashMap<QueryKey, Collection<V>> results;
+    private final Map<String, Map<Object, Set<QueryKey>>> index = new HashMap<>();
+    private final Set<Execution> inFlight = new HashSet<>();
+    private final UUID listenerId;
+
+    PredicateResultCache(IMap<K, V> map, Map<String, Function<V, Object>> extractors, int maxEntries) {
+        this.map = map;
+        this.extractors = extractors;
+        this.maxEntries = maxEntries;
+        this.results = new LinkedHashMap<>(16, 0.75f, true);
+        this.listenerId = map.addEntryListener(new ResultInvalidator(), true);
+    }
+
+    Collection<V> values(QueryKey query) {
+        for (String attribute : query.attributes()) {
+            if (!KEY_ATTRIBUTE.equals(attribute) && !extractors.containsKey(attribute)) {
+                throw new IllegalArgumentException("No extractor for attribute " + attribute + " of " + map.getName());
+            }
+        }
+        Execution execution = new Execution(query);
+        synchronized (this) {
+            Collection<V> cached = results.get(query);
+            if (cached != null) {
+                return cached;
+            }
+            inFlight.add(execution);
+        }
+        Collection<V> values;
+        try {
+            values = Collections.unmodifiableList(new ArrayList<>(map.values(query.toPredicate())));
+        } finally {
+            synchronized (this) {
+                inFlight.remove(execution);
+            }
+        }
+        synchronized (this) {
+            // A change this query may or may not have seen arrived while it ran
+            if (!execution.stale) {
+                cache(query, values);
+            }
+        }
+        return values;
+    }
+
+    synchronized int size() {
+        return results.size();
+    }
+
+    @Override
+    public void close() {
+        map.removeEntryListener(listenerId);
+        synchronized (this) {
+            results.clear();
+            index.clear();
+        }
+    }
+
+    private void cache(QueryKey query, Collection<V> values) {
+        results.put(query, values);
+        String anchor = query.attributes().iterator().next();
+        Map<Object, Set<QueryKey>> byValue = index.computeIfAbsent(anchor, attribute -> new HashMap<>());
+        query.allowedValues(anchor).forEach(value -> byValue.computeIfAbsent(value, v -> new HashSet<>()).add(query));
+        if (results.size() > maxEntries) {
+            remove(results.keySet().iterator().next());
+        }
+    }
+
+    private void remove(QueryKey query) {
+        if (results.remove(query) == null) {
+            return;
+        }
+        String anchor = query.attributes().iterator().next();
+        Map<Object, Set<QueryKey>> byValue = index.get(anchor);
+        for (Object value : query.allowedValues(anchor)) {
+            Set<QueryKey> queries = byValue.get(value);
+            queries.remove(query);
+            if (queries.isEmpty()) {
+                byValue.remove(value);
+            }
+        }
+        if (byValue.isEmpty()) {
+            index.remove(anchor);
+        }
+    }
+
+    private synchronized void invalidate(K key, V oldValue, V newValue) {
+        Set<QueryKey> affected = new HashSet<>();
+        collectAffected(key, oldValue, affected);
+        collectAffected(key, newValue, affected);
+        affected.forEach(this::remove);
+    }
+
+    private void collectAffected(K key, V value, Set<QueryKey> affected) {
+        if (value == null) {
+            return;
+        }
+        Function<String, Object> attributeValue = attribute -> KEY_ATTRIBUTE.equals(attribute)
+                ? key : extractors.get(attribute).apply(value);
+        for (Execution execution : inFlight) {
+            if (execution.query.matches(attributeValue)) {
+                execution.stale = true;
+            }
+        }
+        index.forEach((anchor, byValue) -> {
+            Set<QueryKey> candidates = byValue.get(QueryKey.normalize(attributeValue.apply(anchor)));
+            if (candidates != null) {
+                for (QueryKey query : candidates) {
+                    if (query.matches(attributeValue)) {
+                        affected.add(query);
+                    }
+                }
+            }
+        });
+    }
+
+    private synchronized void invalidateAll() {
+        inFlight.forEach(execution -> execution.stale = true);
+        results.clear();
+        index.clear();
+    }
+
+    // One running query; identity equality, so concurrent runs of the same QueryKey are tracked separately
+    private static final class Execution {
+
+        private final QueryKey query;
+        private boolean stale;
+
+        private Execution(QueryKey query) {
+            this.query = query;
+        }
+    }
+
+    private final class ResultInvalidator implements EntryAddedListener<K, V>, EntryUpdatedListener<K, V>,
+            EntryRemovedListener<K, V>, EntryEvictedListener<K, V>, EntryExpiredListener<K, V>,
+            MapClearedListener, MapEvictedListener {
+
+        @Override
+        public void entryAdded(EntryEvent<K, V> event) {
+            invalidate(event.getKey(), null, event.getValue());
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<K, V> event) {
+            invalidate(event.getKey(), event.getOldValue(), event.getValue());
+        }
+
+        // values(predicate) only sees entries in memory, so evictions and expiries change results as well
+        @Override
+        public void entryRemoved(EntryEvent<K, V> event) {
+            invalidate(event.getKey(), event.getOldValue(), null);
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<K, V> event) {
+            invalidate(event.getKey(), event.getOldValue(), null);
+        }
+
+        @Override
+        public void entryExpired(EntryEvent<K, V> event) {
+            invalidate(event.getKey(), event.getOldValue(), null);
+        }
+
+        @Override
+        public void mapCleared(MapEvent event) {
+            invalidateAll();
+        }
+
+        @Override
+        public void mapEvicted(MapEvent event) {
+            invalidateAll();
+        }
+    }
+}
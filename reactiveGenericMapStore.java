@@ -0,0 +1,117 @@
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.MapStore;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * GenericMapStore for R2DBC repositories. Hazelcast's MapStore contract is blocking, so each call waits on
+ * the reactive pipeline, but the database I/O itself is non-blocking and bulk calls fan out with at most
+ * {@code maxInFlight} concurrent statements.
+ */
+class ReactiveGenericMapStore<ID, T> implements MapStore<ID, T> {
+
+    private final ReactiveCrudRepository<T, ID> repository;
+    private final int maxInFlight;
+    private final Duration timeout;
+
+    ReactiveGenericMapStore(ReactiveCrudRepository<T, ID> repository, int maxInFlight, Duration timeout) {
+        this.repository = repository;
+        this.maxInFlight = maxInFlight;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void store(ID key, T value) {
+        repository.save(value).then().block(timeout);
+    }
+
+    @Override
+    public void storeAll(Map<ID, T> map) {
+        Flux.fromIterable(map.values())
+                .flatMap(repository::save, maxInFlight)
+                .then()
+                .block(timeout);
+    }
+
+    @Override
+    public void delete(ID key) {
+        repository.deleteById(key).block(timeout);
+    }
+
+    @Override
+    public void deleteAll(Collection<ID> keys) {
+        Flux.fromIterable(keys)
+                .flatMap(repository::deleteById, maxInFlight)
+                .then()
+                .block(timeout);
+    }
+
+    @Override
+    public T load(ID key) {
+        return repository.findById(key).block(timeout);
+    }
+
+    @Override
+    public Map<ID, T> loadAll(Collection<ID> keys) {
+        return repository.findAllById(keys)
+                .collectMap(this::getId)
+                .block(timeout);
+    }
+
+    @Override
+    public Iterable<ID> loadAllKeys() {
+        return repository.findAll()
+                .map(this::getId)
+                .collectList()
+                .block(timeout);
+    }
+
+    // Same convention as GenericMapStore: the entity exposes getId()
+    @SuppressWarnings("unchecked")
+    private ID getId(T entity) {
+        try {
+            return (ID) entity.getClass().getMethod("getId").invoke(entity);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to get ID from entity", e);
+        }
+    }
+}
+
+// Non-blocking aggregate reads for WebFlux callers, built on IMap.getAsync.
+@Service
+class ReactivePersonAggregateService {
+
+    private final IMap<Long, Person> personCache;
+    private final IMap<Long, Address> addressCache;
+    private final IMap<Long, List<Skill>> skillsCache;
+
+    ReactivePersonAggregateService(HazelcastInstance hazelcastInstance) {
+        this.personCache = hazelcastInstance.getMap("persons");
+        this.addressCache = hazelcastInstance.getMap("addresses");
+        this.skillsCache = hazelcastInstance.getMap("skills");
+    }
+
+    public Mono<PersonAggregate> getAggregate(Long personId) {
+        Mono<Person> person = Mono.fromCompletionStage(() -> personCache.getAsync(personId));
+        Mono<Address> address = Mono.fromCompletionStage(() -> addressCache.getAsync(personId));
+        Mono<List<Skill>> skills = Mono.fromCompletionStage(() -> skillsCache.getAsync(personId));
+
+        // All three lookups are subscribed together; a missing person means no aggregate
+        return Mono.zip(optional(person), optional(address), skills.defaultIfEmpty(List.of()))
+                .filter(parts -> parts.getT1().isPresent())
+                .map(parts -> new PersonAggregate(parts.getT1().get(), parts.getT2().orElse(null), parts.getT3()));
+    }
+
+    private static <V> Mono<Optional<V>> optional(Mono<V> value) {
+        return value.map(Optional::of).defaultIfEmpty(Optional.empty());
+    }
+}
@@ -0,0 +1,85 @@
+import com.hazelcast.core.EntryView;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.MapLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stale-while-revalidate reads for a TTL map. An entry read within {@code refreshWindowMillis} of its
+ * expiry is served as is while a background task reloads it through the MapLoader and puts it back with
+ * a fresh TTL. The reload uses putTransient, so it never goes back to the database through MapStore.store.
+ *
+ * <p>The reload is only written back if the entry's version is still the one that was read: a put made while
+ * the loader ran wins over the older database row. The check and the putTransient are two calls, so a write
+ * landing between them can still be overwritten until the next refresh.
+ */
+class RefreshAheadMap<K, V> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshAheadMap.class);
+
+    private final IMap<K, V> map;
+    private final MapLoader<K, V> loader;
+    private final long timeToLiveMillis;
+    private final long refreshWindowMillis;
+    private final ExecutorService refreshExecutor;
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+
+    RefreshAheadMap(IMap<K, V> map, MapLoader<K, V> loader, int timeToLiveSeconds, int refreshWindowSeconds,
+                    ExecutorService refreshExecutor) {
+        if (refreshWindowSeconds >= timeToLiveSeconds) {
+            throw new IllegalArgumentException("Refresh window must be shorter than the TTL of map " + map.getName());
+        }
+        this.map = map;
+        this.loader = loader;
+        this.timeToLiveMillis = TimeUnit.SECONDS.toMillis(timeToLiveSeconds);
+        this.refreshWindowMillis = TimeUnit.SECONDS.toMillis(refreshWindowSeconds);
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    public V get(K key) {
+        // getEntryView returns the value and its expiration time in one call, but does not read through
+        EntryView<K, V> entryView = map.getEntryView(key);
+        if (entryView == null) {
+            return map.get(key);
+        }
+        if (entryView.getExpirationTime() - System.currentTimeMillis() <= refreshWindowMillis) {
+            scheduleRefresh(key, entryView.getVersion());
+        }
+        return entryView.getValue();
+    }
+
+    private void scheduleRefresh(K key, long version) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    V value = loader.load(key);
+                    EntryView<K, V> current = map.getEntryView(key);
+                    if (current == null || current.getVersion() != version) {
+                        // Updated, removed or expired meanwhile; the newer state wins
+                        return;
+                    }
+                    if (value == null) {
+                        map.evict(key);
+                    } else {
+                        map.putTransient(key, value, timeToLiveMillis, TimeUnit.MILLISECONDS);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Refresh-ahead of {} in {} failed", key, map.getName(), e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Executor saturated or shut down: the entry simply expires and is read through as usual
+            refreshing.remove(key);
+        }
+    }
+}
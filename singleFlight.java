@@ -0,0 +1,105 @@
+import com.hazelcast.map.MapStore;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader, everyone else
+ * waits on its future. The in-flight table is a ConcurrentHashMap, so contention is per bin and
+ * there is no global lock; the entry is removed as soon as the load completes.
+ */
+final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    V load(K key, Function<? super K, ? extends V> loader) {
+        CompletableFuture<V> future = inFlight.get(key);
+        if (future == null) {
+            CompletableFuture<V> created = new CompletableFuture<>();
+            future = inFlight.putIfAbsent(key, created);
+            if (future == null) {
+                return runLoader(key, created, loader);
+            }
+        }
+        return await(future);
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private V runLoader(K key, CompletableFuture<V> future, Function<? super K, ? extends V> loader) {
+        try {
+            V value = loader.apply(key);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
+
+// MapStore decorator that routes load through a SingleFlight; writes are passed straight through.
+class SingleFlightMapStore<ID, T> implements MapStore<ID, T> {
+
+    private final MapStore<ID, T> delegate;
+    private final SingleFlight<ID, T> loads = new SingleFlight<>();
+
+    SingleFlightMapStore(MapStore<ID, T> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public T load(ID key) {
+        return loads.load(key, delegate::load);
+    }
+
+    @Override
+    public Map<ID, T> loadAll(Collection<ID> keys) {
+        return delegate.loadAll(keys);
+    }
+
+    @Override
+    public Iterable<ID> loadAllKeys() {
+        return delegate.loadAllKeys();
+    }
+
+    @Override
+    public void store(ID key, T value) {
+        delegate.store(key, value);
+    }
+
+    @Override
+    public void storeAll(Map<ID, T> map) {
+        delegate.storeAll(map);
+    }
+
+    @Override
+    public void delete(ID key) {
+        delegate.delete(key);
+    }
+
+    @Override
+    public void deleteAll(Collection<ID> keys) {
+        delegate.deleteAll(keys);
+    }
+}
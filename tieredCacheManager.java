@@ -0,0 +1,267 @@
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.MapEvent;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
+import com.hazelcast.map.listener.MapEvictedListener;
+import com.hazelcast.spring.cache.HazelcastCacheManager;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+@Configuration
+class TieredCacheConfig {
+
+    @Bean
+    CacheManager cacheManager(HazelcastInstance hazelcastInstance) {
+        Map<String, L1CacheSettings> l1Settings = Map.of(
+                "persons", new L1CacheSettings(10_000, CacheEvictionMode.TINY_LFU),
+                "addresses", new L1CacheSettings(10_000, CacheEvictionMode.TINY_LFU),
+                "skills", new L1CacheSettings(5_000, CacheEvictionMode.TINY_LFU));
+        return new TieredCacheManager(new HazelcastCacheManager(hazelcastInstance), hazelcastInstance, l1Settings);
+    }
+}
+
+// Per-cache-name L1 settings for TieredCacheManager; cache names without settings stay L2-only.
+final class L1CacheSettings {
+
+    private final int maxSize;
+    private final CacheEvictionMode evictionMode;
+
+    L1CacheSettings(int maxSize, CacheEvictionMode evictionMode) {
+        this.maxSize = maxSize;
+        this.evictionMode = evictionMode;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    CacheEvictionMode getEvictionMode() {
+        return evictionMode;
+    }
+}
+
+/**
+ * Two-level Spring CacheManager: a bounded in-process L1 in front of the Hazelcast-backed L2 cache manager.
+ * Each L1 is kept coherent by a listener on the IMap behind the L2 cache, which drops the local copy on every
+ * addition, update, removal, eviction or expiry anywhere in the cluster. Additions matter because L1 also caches
+ * absent keys.
+ */
+class TieredCacheManager implements CacheManager {
+
+    private final CacheManager l2CacheManager;
+    private final HazelcastInstance hazelcastInstance;
+    private final Map<String, L1CacheSettings> l1Settings;
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    TieredCacheManager(CacheManager l2CacheManager, HazelcastInstance hazelcastInstance,
+                       Map<String, L1CacheSettings> l1Settings) {
+        this.l2CacheManager = l2CacheManager;
+        this.hazelcastInstance = hazelcastInstance;
+        this.l1Settings = l1Settings;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return l2CacheManager.getCacheNames();
+    }
+
+    private Cache createCache(String name) {
+        Cache l2 = l2CacheManager.getCache(name);
+        L1CacheSettings settings = l1Settings.get(name);
+        if (l2 == null || settings == null) {
+            return l2;
+        }
+        TieredCache cache = new TieredCache(l2, LocalCache.create(settings.getEvictionMode(), settings.getMaxSize()));
+        // HazelcastCacheManager backs each cache with the IMap of the same name
+        hazelcastInstance.getMap(name).addEntryListener(new L1Invalidator(cache), false);
+        return cache;
+    }
+
+    private static final class L1Invalidator implements EntryAddedListener<Object, Object>,
+            EntryUpdatedListener<Object, Object>,
+            EntryRemovedListener<Object, Object>, EntryEvictedListener<Object, Object>,
+            EntryExpiredListener<Object, Object>, MapClearedListener, MapEvictedListener {
+
+        private final TieredCache cache;
+
+        private L1Invalidator(TieredCache cache) {
+            this.cache = cache;
+        }
+
+        // Drops a cached null, e.g. for a key another member or CDC putTransient just added
+        @Override
+        public void entryAdded(EntryEvent<Object, Object> event) {
+            cache.invalidateLocal(event.getKey());
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<Object, Object> event) {
+            cache.invalidateLocal(event.getKey());
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<Object, Object> event) {
+            cache.invalidateLocal(event.getKey());
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<Object, Object> event) {
+            cache.invalidateLocal(event.getKey());
+        }
+
+        @Override
+        public void entryExpired(EntryEvent<Object, Object> event) {
+            cache.invalidateLocal(event.getKey());
+        }
+
+        @Override
+        public void mapCleared(MapEvent event) {
+            cache.invalidateAllLocal();
+        }
+
+        @Override
+        public void mapEvicted(MapEvent event) {
+            cache.invalidateAllLocal();
+        }
+    }
+}
+
+/**
+ * An L1 LocalCache over an L2 Spring Cache. Null results are cached in L1 as a marker, like in L2. An L2 read
+ * only populates L1 if no invalidation of its key arrived while it was in flight, so a slow read cannot reinstate
+ * a value that was just changed elsewhere. Invalidations are counted per stripe of keys, so a burst of them only
+ * cancels the in-flight reads of keys sharing a stripe, not every read.
+ */
+class TieredCache implements Cache {
+
+    private static final Object NULL_VALUE = new Object();
+    private static final int STRIPES = 256;
+
+    private final Cache l2;
+    private final LocalCache<Object, Object> l1;
+    private final AtomicLongArray invalidations = new AtomicLongArray(STRIPES);
+
+    TieredCache(Cache l2, LocalCache<Object, Object> l1) {
+        this.l2 = l2;
+        this.l1 = l1;
+    }
+
+    @Override
+    public String getName() {
+        return l2.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return l2.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object local = l1.get(key);
+        if (local != null) {
+            return new SimpleValueWrapper(fromStoreValue(local));
+        }
+        long generation = invalidations.get(stripe(key));
+        ValueWrapper wrapper = l2.get(key);
+        if (wrapper != null) {
+            populate(key, wrapper.get(), generation);
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object local = l1.get(key);
+        if (local != null) {
+            return (T) fromStoreValue(local);
+        }
+        long generation = invalidations.get(stripe(key));
+        T value = l2.get(key, valueLoader);
+        populate(key, value, generation);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        l2.put(key, value);
+        invalidateLocal(key);
+    }
+
+    @Override
+    public void evict(Object key) {
+        l2.evict(key);
+        invalidateLocal(key);
+    }
+
+    @Override
+    public void clear() {
+        l2.clear();
+        invalidateAllLocal();
+    }
+
+    void invalidateLocal(Object key) {
+        invalidations.incrementAndGet(stripe(key));
+        l1.remove(key);
+    }
+
+    void invalidateAllLocal() {
+        for (int i = 0; i < STRIPES; i++) {
+            invalidations.incrementAndGet(i);
+        }
+        l1.clear();
+    }
+
+    private void populate(Object key, Object value, long generation) {
+        int stripe = stripe(key);
+        if (invalidations.get(stripe) != generation) {
+            return;
+        }
+        l1.put(key, value == null ? NULL_VALUE : value);
+        // An invalidation may have landed between the check and the put
+        if (invalidations.get(stripe) != generation) {
+            l1.remove(key);
+        }
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static Object fromStoreValue(Object value) {
+        return value == NULL_VALUE ? null : value;
+    }
+}
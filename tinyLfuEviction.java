@@ -0,0 +1,334 @@
+import com.hazelcast.config.EvictionConfig;
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.MaxSizePolicy;
+import com.hazelcast.core.EntryView;
+import com.hazelcast.map.MapEvictionPolicyComparator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Eviction modes selectable for the entity maps and the client-side aggregate cache.
+enum CacheEvictionMode {
+    LRU,
+    TINY_LFU
+}
+
+// Minimal local cache contract shared by the LRU and W-TinyLFU implementations.
+interface LocalCache<K, V> {
+
+    V get(K key);
+
+    void put(K key, V value);
+
+    V remove(K key);
+
+    int size();
+
+    void clear();
+
+    static <K, V> LocalCache<K, V> create(CacheEvictionMode mode, int maximumSize) {
+        return mode == CacheEvictionMode.TINY_LFU
+                ? new WindowTinyLfuCache<>(maximumSize)
+                : new LruLocalCache<>(maximumSize);
+    }
+
+    // Primitive long-keyed variants of both modes: no boxing on get(long)/put(long, V), no entry nodes
+    static <V> LongKeyedCache<V> createLongKeyed(CacheEvictionMode mode, int maximumSize) {
+        return mode == CacheEvictionMode.TINY_LFU
+                ? new LongWindowTinyLfuCache<>(maximumSize)
+                : new LongLruCache<>(maximumSize);
+    }
+}
+
+// Count-min sketch with 4-bit counters, halved every 10 * maximumSize increments so old popularity ages out.
+final class FrequencySketch<E> {
+
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    // Written under the lock, read lock-free; frequency() is called from partition threads during eviction
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(int maximumSize) {
+        int capacity = Integer.highestOneBit(Math.max(maximumSize, 8) - 1) << 1;
+        this.table = new AtomicLongArray(capacity);
+        this.tableMask = capacity - 1;
+        this.sampleSize = 10 * Math.max(maximumSize, 1);
+    }
+
+    int frequency(E element) {
+        return frequencyOfHash(element.hashCode());
+    }
+
+    // For callers that hash without boxing, e.g. Long.hashCode(long); must equal element.hashCode()
+    int frequencyOfHash(int hashCode) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table.get(index) >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(E element) {
+        incrementHash(element.hashCode());
+    }
+
+    synchronized void incrementHash(int hashCode) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        long current = table.get(index);
+        if ((current & mask) != mask) {
+            table.set(index, current + (1L << offset));
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length(); i++) {
+            long current = table.get(i);
+            odd += Long.bitCount(current & ONE_MASK);
+            table.set(i, (current >>> 1) & RESET_MASK);
+        }
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEED[i]) * SEED[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
+
+class LruLocalCache<K, V> implements LocalCache<K, V> {
+
+    private final Map<K, V> entries;
+
+    LruLocalCache(int maximumSize) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    @Override
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    @Override
+    public synchronized V remove(K key) {
+        return entries.remove(key);
+    }
+
+    @Override
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
+
+/**
+ * W-TinyLFU: a 1% LRU admission window in front of a segmented LRU main area (20% probation, 80% protected).
+ * A window victim only enters the main area if the sketch says it is used more often than the main area's victim,
+ * so a one-off scan cannot flush hot entries.
+ */
+class WindowTinyLfuCache<K, V> implements LocalCache<K, V> {
+
+    private final int windowMaximum;
+    private final int protectedMaximum;
+    private final int mainMaximum;
+
+    private final LinkedHashMap<K, V> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch<K> sketch;
+
+    WindowTinyLfuCache(int maximumSize) {
+        int maximum = Math.max(maximumSize, 2);
+        this.windowMaximum = Math.max(1, maximum / 100);
+        this.mainMaximum = maximum - windowMaximum;
+        this.protectedMaximum = (int) (mainMaximum * 0.8);
+        this.sketch = new FrequencySketch<>(maximum);
+    }
+
+    @Override
+    public synchronized V get(K key) {
+        sketch.increment(key);
+        V value = window.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = protectedSegment.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = probation.remove(key);
+        if (value != null) {
+            promote(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        sketch.increment(key);
+        if (window.containsKey(key)) {
+            window.put(key, value);
+        } else if (protectedSegment.containsKey(key)) {
+            protectedSegment.put(key, value);
+        } else if (probation.remove(key) != null) {
+            promote(key, value);
+        } else {
+            window.put(key, value);
+            if (window.size() > windowMaximum) {
+                Map.Entry<K, V> candidate = pollEldest(window);
+                admit(candidate.getKey(), candidate.getValue());
+            }
+        }
+    }
+
+    @Override
+    public synchronized V remove(K key) {
+        V value = window.remove(key);
+        if (value == null) {
+            value = probation.remove(key);
+        }
+        if (value == null) {
+            value = protectedSegment.remove(key);
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    private void promote(K key, V value) {
+        protectedSegment.put(key, value);
+        if (protectedSegment.size() > protectedMaximum) {
+            Map.Entry<K, V> demoted = pollEldest(protectedSegment);
+            probation.put(demoted.getKey(), demoted.getValue());
+        }
+    }
+
+    private void admit(K candidateKey, V candidateValue) {
+        if (probation.size() + protectedSegment.size() < mainMaximum) {
+            probation.put(candidateKey, candidateValue);
+            return;
+        }
+        LinkedHashMap<K, V> victimSegment = probation.isEmpty() ? protectedSegment : probation;
+        K victimKey = victimSegment.keySet().iterator().next();
+        if (sketch.frequency(candidateKey) > sketch.frequency(victimKey)) {
+            victimSegment.remove(victimKey);
+            probation.put(candidateKey, candidateValue);
+        }
+    }
+
+    private static <K, V> Map.Entry<K, V> pollEldest(LinkedHashMap<K, V> segment) {
+        Iterator<Map.Entry<K, V>> iterator = segment.entrySet().iterator();
+        Map.Entry<K, V> eldest = iterator.next();
+        Map.Entry<K, V> copy = Map.entry(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        return copy;
+    }
+}
+
+/**
+ * Member-side eviction for the entity maps: entries with the lowest sketch frequency are evicted first, ties
+ * fall back to the owner's hit count and then to LRU.
+ *
+ * <p>The sketch is a local-only approximation: it lives in this JVM and only sees the reads recorded here through
+ * {@link #recordAccess(String, Object)} by the service layer. On members that serve partitions for reads made
+ * elsewhere, and on every member in client/server mode, it is all zeros and ordering is by hits, then LRU.
+ */
+class TinyLfuEvictionComparator implements MapEvictionPolicyComparator<Object, Object> {
+
+    private static final Map<String, FrequencySketch<Object>> SKETCHES = new ConcurrentHashMap<>();
+
+    private final String mapName;
+    private final int maximumSize;
+
+    TinyLfuEvictionComparator(String mapName, int maximumSize) {
+        this.mapName = mapName;
+        this.maximumSize = maximumSize;
+    }
+
+    static void recordAccess(String mapName, Object key) {
+        FrequencySketch<Object> sketch = SKETCHES.get(mapName);
+        if (sketch != null) {
+            sketch.increment(key);
+        }
+    }
+
+    static EvictionConfig evictionConfig(String mapName, CacheEvictionMode mode, int size) {
+        EvictionConfig evictionConfig = new EvictionConfig()
+                .setMaxSizePolicy(MaxSizePolicy.PER_NODE)
+                .setSize(size);
+        if (mode == CacheEvictionMode.TINY_LFU) {
+            SKETCHES.computeIfAbsent(mapName, name -> new FrequencySketch<>(size));
+            return evictionConfig.setComparator(new TinyLfuEvictionComparator(mapName, size));
+        }
+        return evictionConfig.setEvictionPolicy(EvictionPolicy.LRU);
+    }
+
+    @Override
+    public int compare(EntryView<Object, Object> e1, EntryView<Object, Object> e2) {
+        FrequencySketch<Object> sketch = SKETCHES.computeIfAbsent(mapName, name -> new FrequencySketch<>(maximumSize));
+        int result = Integer.compare(sketch.frequency(e1.getKey()), sketch.frequency(e2.getKey()));
+        if (result == 0) {
+            result = Long.compare(e1.getHits(), e2.getHits());
+        }
+        return result == 0 ? Long.compare(e1.getLastAccessTime(), e2.getLastAccessTime()) : result;
+    }
+}
@@ -0,0 +1,178 @@
+import com.hazelcast.config.Config;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+import com.hazelcast.nio.serialization.Portable;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Java-serializes values of one entity type and deflates the bytes of those above {@code thresholdBytes}.
+ * Whether to compress is decided from the observed ratio: while compressing, every write updates a moving
+ * average of compressed/original size; once that stops paying off only every {@code SAMPLE_INTERVAL}th large
+ * value is compressed to re-measure. Each payload carries a flag byte, so switching never breaks reads.
+ *
+ * <p>With the default BINARY in-memory format members keep the serialized (compressed) bytes, which is also
+ * what partition migrations and backups move; values are only inflated where they are deserialized, i.e. on an
+ * actual read. Queries and projections on these values deserialize them on the member.
+ *
+ * <p>Hazelcast binds serializers to types, not maps, so every map holding {@code T} is compressed, and the
+ * type's own Hazelcast serialization is replaced by Java serialization of the object. Hazelcast never consults a
+ * custom serializer for DataSerializable (including IdentifiedDataSerializable) and Portable types, so the
+ * constructor rejects those rather than compress nothing. Clients that read or write {@code T} must register the
+ * same serializer with the same type ID.
+ */
+class CompressingSerializer<T extends Serializable> implements StreamSerializer<T> {
+
+    private static final byte RAW = 0;
+    private static final byte DEFLATED = 1;
+    private static final int SAMPLE_INTERVAL = 64;
+    private static final double EWMA_WEIGHT = 0.05;
+
+    private final Class<T> type;
+    private final int typeId;
+    private final int thresholdBytes;
+    private final double maxRatio;
+    private final AtomicLong largeValues = new AtomicLong();
+    // Starts optimistic so the first large values are measured
+    private volatile double averageRatio;
+
+    CompressingSerializer(Class<T> type, int typeId, int thresholdBytes, double maxRatio) {
+        if (DataSerializable.class.isAssignableFrom(type) || Portable.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException(type.getName() + " uses Hazelcast's own serialization, which takes "
+                    + "precedence over a custom serializer; it would never be compressed");
+        }
+        this.type = type;
+        this.typeId = typeId;
+        this.thresholdBytes = thresholdBytes;
+        this.maxRatio = maxRatio;
+        this.averageRatio = maxRatio / 2;
+    }
+
+    // Registers a serializer for type; clients need it too. maxRatio = 0.8: compress while values shrink by 20%+
+    static <T extends Serializable> CompressingSerializer<T> register(Config config, Class<T> type, int typeId,
+                                                                      int thresholdBytes, double maxRatio) {
+        CompressingSerializer<T> serializer = new CompressingSerializer<>(type, typeId, thresholdBytes, maxRatio);
+        config.getSerializationConfig().addSerializerConfig(new SerializerConfig()
+                .setTypeClass(type)
+                .setImplementation(serializer));
+        return serializer;
+    }
+
+    @Override
+    public int getTypeId() {
+        return typeId;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, T object) throws IOException {
+        byte[] bytes = serialize(object);
+        if (bytes.length >= thresholdBytes && shouldCompress()) {
+            byte[] deflated = deflate(bytes);
+            double ratio = (double) deflated.length / bytes.length;
+            averageRatio += EWMA_WEIGHT * (ratio - averageRatio);
+            if (ratio <= maxRatio) {
+                out.writeByte(DEFLATED);
+                out.writeInt(bytes.length);
+                out.writeByteArray(deflated);
+                return;
+            }
+        }
+        out.writeByte(RAW);
+        out.writeByteArray(bytes);
+    }
+
+    @Override
+    public T read(ObjectDataInput in) throws IOException {
+        byte format = in.readByte();
+        if (format == RAW) {
+            return deserialize(in.readByteArray());
+        }
+        if (format == DEFLATED) {
+            int length = in.readInt();
+            return deserialize(inflate(in.readByteArray(), length));
+        }
+        throw new IOException("Unknown compression format " + format + " for " + type.getName());
+    }
+
+    double averageRatio() {
+        return averageRatio;
+    }
+
+    boolean isCompressing() {
+        return averageRatio <= maxRatio;
+    }
+
+    private boolean shouldCompress() {
+        long count = largeValues.incrementAndGet();
+        return isCompressing() || count % SAMPLE_INTERVAL == 0;
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private T deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return type.cast(in.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot deserialize " + type.getName(), e);
+        }
+    }
+
+    // BEST_SPEED deflate: the fastest codec the JDK ships, and repetitive entity text compresses well at level 1
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 16);
+            byte[] buffer = new byte[Math.min(bytes.length + 64, 1 << 16)];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            byte[] result = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int count = inflater.inflate(result, offset, length - offset);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += count;
+            }
+            if (offset != length) {
+                throw new IOException("Truncated compressed value: " + offset + " of " + length + " bytes");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import com.hazelcast.map.MapStore;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs MapStore calls on virtual threads (Java 21). Bulk calls are split into chunks that run concurrently,
+ * so a slow database is worked in parallel instead of serially on one Hazelcast thread. A per-map semaphore
+ * caps the number of concurrent database calls, and every call has a deadline after which it fails the
+ * Hazelcast operation.
+ *
+ * <p>Cancelling a thread does not stop a running JDBC statement, so each call runs in a transaction whose
+ * timeout is the time left until the deadline; Spring applies it as the statement's query timeout, so the
+ * database call, and the permit it holds, ends by the deadline too. A call still waiting for a permit at the
+ * deadline gives up without touching the database.
+ */
+class VirtualThreadMapStore<ID, T> implements MapStore<ID, T>, AutoCloseable {
+
+    private final MapStore<ID, T> delegate;
+    private final PlatformTransactionManager transactionManager;
+    private final String mapName;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final Duration timeout;
+    private final int chunkSize;
+
+    VirtualThreadMapStore(MapStore<ID, T> delegate, PlatformTransactionManager transactionManager, String mapName,
+                          int maxConcurrency, Duration timeout, int chunkSize) {
+        this.delegate = delegate;
+        this.transactionManager = transactionManager;
+        this.mapName = mapName;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mapstore-" + mapName + "-", 0).factory());
+        this.permits = new Semaphore(maxConcurrency);
+        this.timeout = timeout;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public T load(ID key) {
+        long deadline = deadline();
+        return awaitAll(List.of(submit(deadline, () -> delegate.load(key))), deadline).get(0);
+    }
+
+    @Override
+    public Map<ID, T> loadAll(Collection<ID> keys) {
+        long deadline = deadline();
+        List<Future<Map<ID, T>>> futures = new ArrayList<>();
+        for (List<ID> chunk : chunks(keys)) {
+            futures.add(submit(deadline, () -> delegate.loadAll(chunk)));
+        }
+        Map<ID, T> loaded = new HashMap<>(keys.size() * 2);
+        awaitAll(futures, deadline).forEach(loaded::putAll);
+        return loaded;
+    }
+
+    @Override
+    public Iterable<ID> loadAllKeys() {
+        // Called once per map at startup and consumed lazily by Hazelcast, so it stays on the caller
+        return delegate.loadAllKeys();
+    }
+
+    @Override
+    public void store(ID key, T value) {
+        long deadline = deadline();
+        awaitAll(List.of(submit(deadline, () -> {
+            delegate.store(key, value);
+            return null;
+        })), deadline);
+    }
+
+    @Override
+    public void storeAll(Map<ID, T> map) {
+        long deadline = deadline();
+        List<Future<Object>> futures = new ArrayList<>();
+        for (List<ID> chunk : chunks(map.keySet())) {
+            Map<ID, T> entries = new HashMap<>(chunk.size() * 2);
+            chunk.forEach(key -> entries.put(key, map.get(key)));
+            futures.add(submit(deadline, () -> {
+                delegate.storeAll(entries);
+                return null;
+            }));
+        }
+        awaitAll(futures, deadline);
+    }
+
+    @Override
+    public void delete(ID key) {
+        long deadline = deadline();
+        awaitAll(List.of(submit(deadline, () -> {
+            delegate.delete(key);
+            return null;
+        })), deadline);
+    }
+
+    @Override
+    public void deleteAll(Collection<ID> keys) {
+        long deadline = deadline();
+        List<Future<Object>> futures = new ArrayList<>();
+        for (List<ID> chunk : chunks(keys)) {
+            futures.add(submit(deadline, () -> {
+                delegate.deleteAll(chunk);
+                return null;
+            }));
+        }
+        awaitAll(futures, deadline);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private long deadline() {
+        return System.nanoTime() + timeout.toNanos();
+    }
+
+    private <R> Future<R> submit(long deadline, Supplier<R> call) {
+        return executor.submit(() -> {
+            if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new TimeoutException("No database permit for " + mapName + " within " + timeout);
+            }
+            try {
+                TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+                // Whole seconds, rounded up; the wait in awaitAll enforces the exact deadline
+                long remainingSeconds = TimeUnit.NANOSECONDS.toSeconds(deadline - System.nanoTime() + 999_999_999L);
+                transaction.setTimeout((int) Math.max(1, remainingSeconds));
+                return transaction.execute(status -> call.get());
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    private <R> List<R> awaitAll(List<Future<R>> futures, long deadline) {
+        List<R> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+            return results;
+        } catch (TimeoutException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("MapStore call on " + mapName + " timed out after " + timeout, e);
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for MapStore call on " + mapName, e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("MapStore call on " + mapName + " failed", e.getCause());
+        }
+    }
+
+    private List<List<ID>> chunks(Collection<ID> keys) {
+        List<List<ID>> chunks = new ArrayList<>();
+        Iterator<ID> iterator = keys.iterator();
+        while (iterator.hasNext()) {
+            List<ID> chunk = new ArrayList<>(chunkSize);
+            while (iterator.hasNext() && chunk.size() < chunkSize) {
+                chunk.add(iterator.next());
+            }
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
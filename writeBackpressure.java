@@ -0,0 +1,304 @@
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+// What a map does with new writes while its write-behind queue is above the high watermark.
+enum OverloadPolicy {
+    // Callers wait until the queue drains to the low watermark (or maxBlock passes)
+    BLOCK,
+    // Each caller waits until its own write has reached the database
+    WRITE_THROUGH,
+    // Writes are appended to a local file and fed back to the queue once it drains to the low watermark
+    SPILL_TO_DISK
+}
+
+/**
+ * High/low watermark state for one map's write-behind queue, with hysteresis: the map is overloaded from the
+ * moment the queue reaches the high watermark until it drains back to the low watermark. Transitions are
+ * logged at WARN/INFO, and the {@code writebehind.*} meters (pending, overloaded, blocked, write-through,
+ * spilled) are what alert rules should key on.
+ */
+class WriteBackpressure {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBackpressure.class);
+
+    private final String mapName;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final OverloadPolicy policy;
+    private final long maxBlockMillis;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger overloadedGauge = new AtomicInteger();
+    private final Counter blockedWrites;
+    private final Counter writeThroughWrites;
+    private final Counter spilledWrites;
+    private boolean overloaded;
+
+    WriteBackpressure(String mapName, int highWatermark, int lowWatermark, OverloadPolicy policy,
+                      long maxBlockMillis, MeterRegistry meterRegistry) {
+        if (lowWatermark >= highWatermark) {
+            throw new IllegalArgumentException("Low watermark must be below the high watermark for map " + mapName);
+        }
+        this.mapName = mapName;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.policy = policy;
+        this.maxBlockMillis = maxBlockMillis;
+        Tags tags = Tags.of("map", mapName);
+        meterRegistry.gauge("writebehind.pending", tags, pending);
+        meterRegistry.gauge("writebehind.overloaded", tags, overloadedGauge);
+        this.blockedWrites = meterRegistry.counter("writebehind.blocked", tags);
+        this.writeThroughWrites = meterRegistry.counter("writebehind.writethrough", tags);
+        this.spilledWrites = meterRegistry.counter("writebehind.spilled", tags);
+    }
+
+    OverloadPolicy getPolicy() {
+        return policy;
+    }
+
+    long getMaxBlockMillis() {
+        return maxBlockMillis;
+    }
+
+    int pending() {
+        return pending.get();
+    }
+
+    boolean belowLowWatermark() {
+        return pending.get() <= lowWatermark;
+    }
+
+    synchronized boolean isOverloaded() {
+        return overloaded;
+    }
+
+    void added(int count) {
+        update(pending.addAndGet(count));
+    }
+
+    void written(int count) {
+        update(pending.addAndGet(-count));
+    }
+
+    void recordBlocked() {
+        blockedWrites.increment();
+    }
+
+    void recordWriteThrough() {
+        writeThroughWrites.increment();
+    }
+
+    void recordSpilled() {
+        spilledWrites.increment();
+    }
+
+    // Waits until the map is no longer overloaded; gives up after maxBlockMillis so a dead database cannot hang callers forever
+    synchronized void awaitCapacity() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBlockMillis);
+        while (overloaded) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                LOGGER.warn("Write-behind on {} still overloaded after {} ms, letting the write through", mapName,
+                        maxBlockMillis);
+                return;
+            }
+            wait(remaining);
+        }
+    }
+
+    private synchronized void update(int current) {
+        if (!overloaded && current >= highWatermark) {
+            overloaded = true;
+            overloadedGauge.set(1);
+            LOGGER.warn("Write-behind on {} reached the high watermark ({} pending), applying {}", mapName, current,
+                    policy);
+        } else if (overloaded && current <= lowWatermark) {
+            overloaded = false;
+            overloadedGauge.set(0);
+            LOGGER.info("Write-behind on {} drained to the low watermark ({} pending)", mapName, current);
+            notifyAll();
+        }
+    }
+}
+
+/**
+ * Append-only FIFO of Java-serialized records on local disk, read back from the head. The file is truncated
+ * whenever it has been fully read, so it only grows for as long as the overload lasts.
+ *
+ * <p>Every append is forced to disk before it returns, so a record survives a crash until it has been polled.
+ * Records left by a previous run are kept and will be polled again from the head; a record torn by a crash
+ * mid-append is cut off. A record that cannot be deserialized any more (e.g. its class changed) is logged and
+ * skipped. Records are addressed by their file position, which stays valid until the file is truncated.
+ */
+class SpillFile implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillFile.class);
+
+    private final FileChannel channel;
+    private long readPosition;
+    private int size;
+
+    SpillFile(Path path) {
+        try {
+            Files.createDirectories(path.getParent());
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open spill file " + path, e);
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    // Returns the record's position for read(long)
+    synchronized long append(Serializable record) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(record);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + bytes.size());
+            buffer.putInt(bytes.size()).put(bytes.toByteArray()).flip();
+            long start = channel.size();
+            long position = start;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(false);
+            size++;
+            return start;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write to spill file", e);
+        }
+    }
+
+    // Reads the record at a position returned by append or passed to forEach without consuming it; null if unreadable
+    @SuppressWarnings("unchecked")
+    synchronized <R> R read(long position) {
+        try {
+            return (R) deserialize(readBody(position), position);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read spill file", e);
+        }
+    }
+
+    // Every unpolled readable record with its position, head first
+    @SuppressWarnings("unchecked")
+    synchronized <R> void forEach(BiConsumer<Long, R> action) {
+        try {
+            long position = readPosition;
+            for (int i = 0; i < size; i++) {
+                byte[] body = readBody(position);
+                R record = (R) deserialize(body, position);
+                if (record != null) {
+                    action.accept(position, record);
+                }
+                position += Integer.BYTES + body.length;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read spill file", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized <R> List<R> poll(int maxRecords) {
+        List<R> records = new ArrayList<>(Math.min(maxRecords, size));
+        try {
+            while (records.size() < maxRecords && size > 0) {
+                long position = readPosition;
+                byte[] body = readBody(position);
+                readPosition += Integer.BYTES + body.length;
+                size--;
+                R record = (R) deserialize(body, position);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+            if (size == 0) {
+                channel.truncate(0);
+                readPosition = 0;
+            }
+            return records;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read spill file", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    // Counts the complete records already in the file and cuts off a torn one at the end
+    private void recover() throws IOException {
+        long fileSize = channel.size();
+        long position = 0;
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        while (position + Integer.BYTES <= fileSize) {
+            length.clear();
+            readFully(length, position);
+            long next = position + Integer.BYTES + length.flip().getInt();
+            if (next > fileSize) {
+                break;
+            }
+            position = next;
+            size++;
+        }
+        if (position < fileSize) {
+            channel.truncate(position);
+        }
+    }
+
+    private byte[] readBody(long position) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, position);
+        ByteBuffer body = ByteBuffer.allocate(length.flip().getInt());
+        readFully(body, position + Integer.BYTES);
+        return body.array();
+    }
+
+    private static Object deserialize(byte[] body, long position) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(body))) {
+            return in.readObject();
+        } catch (ClassNotFoundException | ObjectStreamException e) {
+            LOGGER.error("Skipping unreadable spill record at position {}", position, e);
+            return null;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of spill file");
+            }
+        }
+    }
+}